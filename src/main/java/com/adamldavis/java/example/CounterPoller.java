@@ -0,0 +1,265 @@
+/*
+ * Copyright 2014 Adam L. Davis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.adamldavis.java.example;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.adamldavis.java.lazy.FetchEngine;
+import com.adamldavis.java.lazy.FetchException;
+import com.adamldavis.java.lazy.HttpConnectionPool;
+
+/**
+ * Keeps the latest value of many numeric endpoints (counters, gauges) in a
+ * {@link CounterTable}. Each refresh splits the endpoints into batches that
+ * run in parallel, each batch on one thread with one reused
+ * {@link DigitSink}, over keep-alive connections from a shared pool. A
+ * refresh that is still running when the next one is due is skipped rather
+ * than queued, so a slow host makes values stale instead of piling up work.
+ *
+ * <pre>
+ * try (CounterPoller poller = new CounterPoller(urls)) {
+ * 	poller.start(500);
+ * 	long hits = poller.getTable().getValue(0);
+ * }
+ * </pre>
+ *
+ * @author Adam L. Davis
+ */
+public class CounterPoller implements Closeable {
+
+	private final String[] urls;
+	private final CounterTable table;
+	private final FetchEngine engine;
+	private final int batchSize;
+	private final ExecutorService workers;
+	private final ExecutorService refresher;
+	private final ScheduledExecutorService timer;
+	private final ThreadLocal<DigitSink> sinks = new ThreadLocal<DigitSink>() {
+		@Override
+		protected DigitSink initialValue() {
+			return new DigitSink();
+		}
+	};
+
+	private final AtomicInteger running = new AtomicInteger();
+	private final AtomicLong refreshes = new AtomicLong();
+	private final AtomicLong skipped = new AtomicLong();
+	private final AtomicLong polls = new AtomicLong();
+	private final AtomicLong failures = new AtomicLong();
+	private volatile long lastRefreshMillis;
+	private volatile long lastRefreshNanos;
+
+	public CounterPoller(List<String> urls) {
+		this(urls, 16, 64, 2000, 2000);
+	}
+
+	/**
+	 * @param urls
+	 *            the endpoints, whose index is their id in the table.
+	 * @param threads
+	 *            number of batches fetched at once.
+	 * @param batchSize
+	 *            endpoints fetched one after another by one thread.
+	 */
+	public CounterPoller(List<String> urls, int threads, int batchSize,
+			int connectTimeoutMillis, int readTimeoutMillis) {
+		this.urls = urls.toArray(new String[urls.size()]);
+		this.table = new CounterTable(this.urls.length);
+		this.batchSize = batchSize;
+		// enough idle connections per host for every thread to keep one
+		this.engine = new FetchEngine(new HttpConnectionPool(threads, 30000),
+				connectTimeoutMillis, readTimeoutMillis);
+		this.engine.setCompression(false); // bodies are a few bytes
+		this.workers = Executors.newFixedThreadPool(threads,
+				daemonThreads("counter-poller"));
+		this.refresher = Executors.newSingleThreadExecutor(
+				daemonThreads("counter-poller-refresh"));
+		this.timer = Executors.newSingleThreadScheduledExecutor(
+				daemonThreads("counter-poller-timer"));
+	}
+
+	/**
+	 * Starts a refresh every periodMillis until closed. The timer only hands
+	 * refreshes to another thread, so it keeps ticking while one runs long,
+	 * and the ticks in the meantime are skipped.
+	 */
+	public void start(long periodMillis) {
+		timer.scheduleAtFixedRate(() -> {
+			if (!running.compareAndSet(0, 1)) {
+				skipped.incrementAndGet();
+				return;
+			}
+			try {
+				refresher.execute(() -> {
+					try {
+						refresh();
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					} finally {
+						running.set(0);
+					}
+				});
+			} catch (RejectedExecutionException e) {
+				running.set(0); // closed
+			}
+		}, 0, periodMillis, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Polls every endpoint once and waits for all of them.
+	 *
+	 * @return false if another refresh was already running or the poller is
+	 *         closed.
+	 */
+	public boolean refreshNow() throws InterruptedException {
+		if (!running.compareAndSet(0, 1)) {
+			skipped.incrementAndGet();
+			return false;
+		}
+		try {
+			return refresh();
+		} finally {
+			running.set(0);
+		}
+	}
+
+	// false if closed before or while it ran
+	private boolean refresh() throws InterruptedException {
+		final long start = System.nanoTime();
+		final List<Callable<Void>> batches = new ArrayList<>();
+		for (int from = 0; from < urls.length; from += batchSize) {
+			final int first = from;
+			final int last = Math.min(from + batchSize, urls.length);
+			batches.add(() -> {
+				pollBatch(first, last);
+				return null;
+			});
+		}
+		try {
+			workers.invokeAll(batches);
+		} catch (RejectedExecutionException e) {
+			return false; // closed, so the workers are shut down
+		}
+		lastRefreshNanos = System.nanoTime() - start;
+		lastRefreshMillis = System.currentTimeMillis();
+		refreshes.incrementAndGet();
+		return true;
+	}
+
+	private void pollBatch(int first, int last) {
+		final DigitSink sink = sinks.get();
+		for (int id = first; id < last; id++) {
+			poll(id, sink);
+		}
+	}
+
+	private void poll(int id, DigitSink sink) {
+		polls.incrementAndGet();
+		try {
+			final long value = URLFetcher.fetchURLAsLong(engine, sink,
+					urls[id]);
+			table.update(id, value, System.currentTimeMillis());
+		} catch (Exception e) {
+			failures.incrementAndGet();
+			table.fail(id, PollError.of(e),
+					e instanceof FetchException ? ((FetchException) e).status
+							: 0, System.currentTimeMillis());
+		}
+	}
+
+	public CounterTable getTable() {
+		return table;
+	}
+
+	public String getUrl(int id) {
+		return urls[id];
+	}
+
+	public FetchEngine getEngine() {
+		return engine;
+	}
+
+	public long getRefreshes() {
+		return refreshes.get();
+	}
+
+	/** Refreshes that were due while the previous one was still running. */
+	public long getSkipped() {
+		return skipped.get();
+	}
+
+	public long getPolls() {
+		return polls.get();
+	}
+
+	public long getFailures() {
+		return failures.get();
+	}
+
+	/** When the last refresh finished, or 0 if none has. */
+	public long getLastRefreshMillis() {
+		return lastRefreshMillis;
+	}
+
+	/** How long the last refresh took, in nanoseconds. */
+	public long getLastRefreshNanos() {
+		return lastRefreshNanos;
+	}
+
+	private static ThreadFactory daemonThreads(final String name) {
+		return r -> {
+			Thread thread = new Thread(r, name);
+			thread.setDaemon(true);
+			return thread;
+		};
+	}
+
+	/** One line with the counts of stale values and of each error. */
+	public String report(long maxAgeMillis) {
+		final long now = System.currentTimeMillis();
+		final StringBuilder report = new StringBuilder();
+		report.append(urls.length).append(" endpoints, ")
+				.append(table.countStale(maxAgeMillis, now))
+				.append(" stale, last refresh ")
+				.append(lastRefreshNanos / 1000000).append("ms");
+		final int[] errors = table.countErrors();
+		for (PollError error : PollError.values()) {
+			if (error != PollError.NONE && errors[error.ordinal()] > 0) {
+				report.append(", ").append(error).append(' ')
+						.append(errors[error.ordinal()]);
+			}
+		}
+		return report.toString();
+	}
+
+	public void close() {
+		timer.shutdownNow();
+		refresher.shutdownNow();
+		workers.shutdownNow();
+		engine.close();
+	}
+}
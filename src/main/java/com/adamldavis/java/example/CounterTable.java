@@ -0,0 +1,114 @@
+/*
+ * Copyright 2014 Adam L. Davis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.adamldavis.java.example;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * The latest value of each endpoint, keyed by its int id, in flat atomic
+ * arrays rather than a map of boxed Longs: a few dozen bytes per endpoint and
+ * no garbage per update. Readers never block, but may see a value from one
+ * poll with the time of the next one.
+ *
+ * @author Adam L. Davis
+ */
+public class CounterTable {
+
+	private final int size;
+	private final AtomicLongArray values;
+	private final AtomicLongArray updatedAt; // last success, 0 for never
+	private final AtomicLongArray checkedAt; // last attempt, 0 for never
+	private final AtomicIntegerArray errors; // PollError ordinals
+	private final AtomicIntegerArray statuses; // HTTP status of HTTP_STATUS
+
+	public CounterTable(int size) {
+		this.size = size;
+		values = new AtomicLongArray(size);
+		updatedAt = new AtomicLongArray(size);
+		checkedAt = new AtomicLongArray(size);
+		errors = new AtomicIntegerArray(size);
+		statuses = new AtomicIntegerArray(size);
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public void update(int id, long value, long now) {
+		values.set(id, value);
+		errors.set(id, PollError.NONE.ordinal());
+		statuses.set(id, 0);
+		updatedAt.set(id, now);
+		checkedAt.set(id, now);
+	}
+
+	/** Records a failed poll; the last good value is kept. */
+	public void fail(int id, PollError error, int status, long now) {
+		errors.set(id, error.ordinal());
+		statuses.set(id, status);
+		checkedAt.set(id, now);
+	}
+
+	/** The last value polled successfully, or 0 if there's none yet. */
+	public long getValue(int id) {
+		return values.get(id);
+	}
+
+	/** When the value was polled, in milliseconds, or 0 for never. */
+	public long getUpdatedAt(int id) {
+		return updatedAt.get(id);
+	}
+
+	public long getCheckedAt(int id) {
+		return checkedAt.get(id);
+	}
+
+	/** Why the last poll failed, or NONE if it didn't. */
+	public PollError getError(int id) {
+		return PollError.values()[errors.get(id)];
+	}
+
+	/** The HTTP status if the last error was HTTP_STATUS, otherwise 0. */
+	public int getStatus(int id) {
+		return statuses.get(id);
+	}
+
+	/** @return true if there's no value or it's older than maxAgeMillis. */
+	public boolean isStale(int id, long maxAgeMillis, long now) {
+		final long updated = updatedAt.get(id);
+		return updated == 0 || now - updated > maxAgeMillis;
+	}
+
+	public int countStale(long maxAgeMillis, long now) {
+		int stale = 0;
+		for (int id = 0; id < size; id++) {
+			if (isStale(id, maxAgeMillis, now)) {
+				stale++;
+			}
+		}
+		return stale;
+	}
+
+	/** @return how many endpoints have each PollError, by ordinal. */
+	public int[] countErrors() {
+		final int[] counts = new int[PollError.values().length];
+		for (int id = 0; id < size; id++) {
+			counts[errors.get(id)]++;
+		}
+		return counts;
+	}
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright 2014 Adam L. Davis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.adamldavis.java.example;
+
+import java.nio.ByteBuffer;
+
+import com.adamldavis.java.lazy.BodySink;
+import com.adamldavis.java.lazy.HttpResponse;
+
+/**
+ * Parses a body holding one decimal number, such as "42\n", straight from
+ * the bytes without making a String. Surrounding whitespace and a leading
+ * '-' or '+' are allowed; anything else throws NumberFormatException, and a
+ * number too big for a long throws ArithmeticException. One sink can be reused
+ * for any number of responses, one at a time, so polling allocates nothing.
+ *
+ * @author Adam L. Davis
+ */
+public class DigitSink implements BodySink<DigitSink> {
+
+	private static final int LEADING = 0, DIGITS = 1, TRAILING = 2;
+
+	private int state;
+	private boolean negative;
+	private int digits;
+	private long value; // kept negative, since -Long.MIN_VALUE doesn't fit
+
+	@Override
+	public void begin(HttpResponse head) {
+		state = LEADING;
+		negative = false;
+		digits = 0;
+		value = 0;
+	}
+
+	@Override
+	public void write(ByteBuffer data) {
+		final int limit = data.limit();
+		for (int i = data.position(); i < limit; i++) {
+			final int b = data.get(i);
+			if (b >= '0' && b <= '9' && state != TRAILING) {
+				state = DIGITS;
+				if (value < (Long.MIN_VALUE + (b - '0')) / 10) {
+					throw new ArithmeticException("Number doesn't fit in a long");
+				}
+				value = value * 10 - (b - '0');
+				digits++;
+			} else if (b == ' ' || b == '\n' || b == '\r' || b == '\t') {
+				if (state == DIGITS) {
+					state = TRAILING;
+				}
+			} else if ((b == '-' || b == '+') && state == LEADING) {
+				negative = b == '-';
+				state = DIGITS; // no whitespace between the sign and digits
+			} else {
+				throw new NumberFormatException("Unexpected byte " + b
+						+ " in a number");
+			}
+		}
+		data.position(limit);
+	}
+
+	@Override
+	public DigitSink end() {
+		if (digits == 0) {
+			throw new NumberFormatException("No digits");
+		}
+		if (!negative && value == Long.MIN_VALUE) {
+			throw new ArithmeticException("Number doesn't fit in a long");
+		}
+		return this;
+	}
+
+	/** The number parsed by the last successful end(). */
+	public long getValue() {
+		return negative ? value : -value;
+	}
+}
@@ -66,6 +66,9 @@ public class Factory {
 			return new ConcurrentHashMap<>();
 		case "hashtable":
 			return new Hashtable<>();
+		case "offheap":
+			// only for fixed-width keys/values like Long or Double
+			return new OffHeapMap<>(kClass, vClass);
 		case "map":
 		case "hashmap":
 		default:
@@ -0,0 +1,397 @@
+/*
+ * Copyright 2014 Adam L. Davis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.adamldavis.java.example;
+
+import java.io.Closeable;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * A Map of fixed-width keys and values stored in direct ByteBuffer slabs using
+ * open addressing (linear probing). The entries live outside the Java heap, so
+ * the garbage collector only ever sees a handful of slab objects no matter how
+ * many entries there are.
+ *
+ * Like HashMap this is not thread-safe. Null keys and values are not allowed.
+ * Once {@link #close()} is called the slabs are freed and any further use
+ * throws IllegalStateException.
+ *
+ * Direct memory is normally only returned once a GC notices the ByteBuffer
+ * is unreachable, which can be long after it's needed elsewhere. So close()
+ * and growing free the old slabs right away. The JDK has no public API for
+ * this before Java 22's Arena, which this Java 8 build can't use, so it calls
+ * sun.misc.Unsafe.invokeCleaner (Java 9+) or the buffer's Cleaner (Java 8)
+ * through reflection. If neither is available the slabs are left to the GC as
+ * before.
+ *
+ * @author Adam L. Davis
+ */
+public class OffHeapMap<K, V> extends AbstractMap<K, V> implements Closeable {
+
+	private static final byte EMPTY = 0;
+	private static final byte FULL = 1;
+	private static final byte DELETED = 2;
+
+	private static final int MAX_CAPACITY = 1 << 30;
+	// keeps each direct buffer well under the 2GB ByteBuffer limit
+	private static final int MAX_SLAB_BYTES = 1 << 28;
+	private static final float LOAD_FACTOR = 0.7f;
+
+	private static final Object UNSAFE;
+	private static final Method INVOKE_CLEANER;
+
+	static {
+		Object unsafe = null;
+		Method invokeCleaner = null;
+		try {
+			final Class<?> type = Class.forName("sun.misc.Unsafe");
+			invokeCleaner = type.getMethod("invokeCleaner", ByteBuffer.class);
+			final Field field = type.getDeclaredField("theUnsafe");
+			field.setAccessible(true);
+			unsafe = field.get(null);
+		} catch (ReflectiveOperationException | RuntimeException e) {
+			invokeCleaner = null; // Java 8, see free
+		}
+		UNSAFE = unsafe;
+		INVOKE_CLEANER = invokeCleaner;
+	}
+
+	private final OffHeapSerializer<K> keys;
+	private final OffHeapSerializer<V> values;
+	private final int slotSize;
+
+	private ByteBuffer[] slabs;
+	private int slabShift;
+	private int capacity;
+	private int size;
+	private int deleted;
+	private int modCount;
+
+	public OffHeapMap(OffHeapSerializer<K> keys, OffHeapSerializer<V> values) {
+		this(keys, values, 16);
+	}
+
+	public OffHeapMap(OffHeapSerializer<K> keys,
+			OffHeapSerializer<V> values, int expectedSize) {
+		this.keys = keys;
+		this.values = values;
+		this.slotSize = 1 + keys.size() + values.size();
+		allocate(capacityFor(expectedSize));
+	}
+
+	public OffHeapMap(Class<K> kClass, Class<V> vClass) {
+		this(OffHeapSerializer.forClass(kClass), OffHeapSerializer
+				.forClass(vClass));
+	}
+
+	@Override
+	public int size() {
+		checkOpen();
+		return size;
+	}
+
+	@Override
+	public boolean containsKey(Object key) {
+		return indexOf(key) >= 0;
+	}
+
+	@Override
+	public V get(Object key) {
+		final int index = indexOf(key);
+		return index < 0 ? null : readValue(index);
+	}
+
+	@Override
+	public V put(K key, V value) {
+		checkOpen();
+		if (value == null) {
+			throw new NullPointerException("null values are not supported");
+		}
+		if (size >= MAX_CAPACITY * LOAD_FACTOR) {
+			throw new IllegalStateException("OffHeapMap is full");
+		}
+		final int hash = hash(key);
+		int index = hash & (capacity - 1);
+		int firstDeleted = -1;
+
+		while (true) {
+			final byte state = state(index);
+			if (state == EMPTY) {
+				break;
+			} else if (state == DELETED) {
+				if (firstDeleted < 0) {
+					firstDeleted = index;
+				}
+			} else if (readKey(index).equals(key)) {
+				final V old = readValue(index);
+				values.write(slab(index), offset(index) + 1 + keys.size(),
+						value);
+				return old;
+			}
+			index = (index + 1) & (capacity - 1);
+		}
+		if (firstDeleted >= 0) {
+			index = firstDeleted;
+			deleted--;
+		}
+		write(index, key, value);
+		size++;
+		modCount++;
+		if (size + deleted > capacity * LOAD_FACTOR) {
+			// only grow if it isn't just tombstones filling the table
+			resize(size > capacity * LOAD_FACTOR / 2
+					&& capacity < MAX_CAPACITY ? capacity * 2 : capacity);
+		}
+		return null;
+	}
+
+	@Override
+	public V remove(Object key) {
+		final int index = indexOf(key);
+		if (index < 0) {
+			return null;
+		}
+		final V old = readValue(index);
+		removeAt(index);
+		return old;
+	}
+
+	@Override
+	public void clear() {
+		checkOpen();
+		for (ByteBuffer slab : slabs) {
+			for (int off = 0; off < slab.capacity(); off += slotSize) {
+				slab.put(off, EMPTY);
+			}
+		}
+		size = 0;
+		deleted = 0;
+		modCount++;
+	}
+
+	@Override
+	public Set<Map.Entry<K, V>> entrySet() {
+		checkOpen();
+		return new AbstractSet<Map.Entry<K, V>>() {
+			public Iterator<Map.Entry<K, V>> iterator() {
+				return new EntryIterator();
+			}
+
+			public int size() {
+				return OffHeapMap.this.size();
+			}
+		};
+	}
+
+	/** Bytes of direct memory held by this map's slabs. */
+	public long getOffHeapBytes() {
+		checkOpen();
+		return (long) capacity * slotSize;
+	}
+
+	/**
+	 * Frees the slabs' direct memory now, rather than whenever the GC gets to
+	 * the ByteBuffers. Closing twice does nothing.
+	 */
+	public void close() {
+		if (slabs != null) {
+			free(slabs);
+		}
+		slabs = null;
+		size = 0;
+		deleted = 0;
+	}
+
+	private int indexOf(Object key) {
+		checkOpen();
+		if (key == null) {
+			return -1;
+		}
+		int index = hash(key) & (capacity - 1);
+		while (true) {
+			final byte state = state(index);
+			if (state == EMPTY) {
+				return -1;
+			} else if (state == FULL && readKey(index).equals(key)) {
+				return index;
+			}
+			index = (index + 1) & (capacity - 1);
+		}
+	}
+
+	private void removeAt(int index) {
+		slab(index).put(offset(index), DELETED);
+		size--;
+		deleted++;
+		modCount++;
+	}
+
+	private void resize(int newCapacity) {
+		final ByteBuffer[] oldSlabs = slabs;
+		final int oldSlabShift = slabShift;
+		final int oldCapacity = capacity;
+		allocate(newCapacity);
+
+		for (int i = 0; i < oldCapacity; i++) {
+			final ByteBuffer slab = oldSlabs[i >>> oldSlabShift];
+			final int off = (i & ((1 << oldSlabShift) - 1)) * slotSize;
+			if (slab.get(off) == FULL) {
+				final K key = keys.read(slab, off + 1);
+				int index = hash(key) & (capacity - 1);
+				while (state(index) != EMPTY) {
+					index = (index + 1) & (capacity - 1);
+				}
+				write(index, key, values.read(slab, off + 1 + keys.size()));
+			}
+		}
+		deleted = 0;
+		free(oldSlabs);
+	}
+
+	private void allocate(int newCapacity) {
+		int slotsPerSlab = Integer.highestOneBit(MAX_SLAB_BYTES / slotSize);
+		if (slotsPerSlab > newCapacity) {
+			slotsPerSlab = newCapacity;
+		}
+		final ByteBuffer[] newSlabs = new ByteBuffer[newCapacity
+				/ slotsPerSlab];
+		for (int i = 0; i < newSlabs.length; i++) {
+			// allocateDirect zeroes the memory, so every slot starts EMPTY
+			newSlabs[i] = ByteBuffer.allocateDirect(slotsPerSlab * slotSize);
+		}
+		slabs = newSlabs;
+		slabShift = Integer.numberOfTrailingZeros(slotsPerSlab);
+		capacity = newCapacity;
+	}
+
+	private void write(int index, K key, V value) {
+		final ByteBuffer slab = slab(index);
+		final int off = offset(index);
+		keys.write(slab, off + 1, key);
+		values.write(slab, off + 1 + keys.size(), value);
+		slab.put(off, FULL);
+	}
+
+	private byte state(int index) {
+		return slab(index).get(offset(index));
+	}
+
+	private K readKey(int index) {
+		return keys.read(slab(index), offset(index) + 1);
+	}
+
+	private V readValue(int index) {
+		return values.read(slab(index), offset(index) + 1 + keys.size());
+	}
+
+	private ByteBuffer slab(int index) {
+		return slabs[index >>> slabShift];
+	}
+
+	private int offset(int index) {
+		return (index & ((1 << slabShift) - 1)) * slotSize;
+	}
+
+	// the buffers must never be touched again, or the JVM can crash
+	private static void free(ByteBuffer[] slabs) {
+		for (ByteBuffer slab : slabs) {
+			try {
+				if (INVOKE_CLEANER != null) {
+					INVOKE_CLEANER.invoke(UNSAFE, slab);
+				} else {
+					final Method cleaner = slab.getClass().getMethod("cleaner");
+					cleaner.setAccessible(true);
+					final Object c = cleaner.invoke(slab);
+					c.getClass().getMethod("clean").invoke(c);
+				}
+			} catch (ReflectiveOperationException | RuntimeException e) {
+				return; // can't free it early, so the GC will
+			}
+		}
+	}
+
+	private void checkOpen() {
+		if (slabs == null) {
+			throw new IllegalStateException("OffHeapMap is closed");
+		}
+	}
+
+	private static int capacityFor(int expectedSize) {
+		final long needed = (long) (Math.max(expectedSize, 8) / LOAD_FACTOR) + 1;
+		if (needed >= MAX_CAPACITY) {
+			return MAX_CAPACITY;
+		}
+		return Integer.highestOneBit((int) needed - 1) << 1;
+	}
+
+	// spreads the bits since the probe sequence only uses the low bits
+	private static int hash(Object key) {
+		int h = key.hashCode() * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+
+	private class EntryIterator implements Iterator<Map.Entry<K, V>> {
+		int next = advance(0);
+		int last = -1;
+		int expectedModCount = modCount;
+
+		public boolean hasNext() {
+			return next < capacity;
+		}
+
+		public Map.Entry<K, V> next() {
+			checkOpen();
+			if (expectedModCount != modCount) {
+				throw new ConcurrentModificationException();
+			}
+			if (next >= capacity) {
+				throw new NoSuchElementException();
+			}
+			last = next;
+			next = advance(next + 1);
+			return new SimpleImmutableEntry<>(readKey(last), readValue(last));
+		}
+
+		public void remove() {
+			if (last < 0) {
+				throw new IllegalStateException();
+			}
+			checkOpen();
+			if (expectedModCount != modCount) {
+				throw new ConcurrentModificationException();
+			}
+			removeAt(last);
+			expectedModCount = modCount;
+			last = -1;
+		}
+
+		private int advance(int index) {
+			checkOpen();
+			while (index < capacity && state(index) != FULL) {
+				index++;
+			}
+			return index;
+		}
+	}
+}
@@ -0,0 +1,163 @@
+/*
+ * Copyright 2014 Adam L. Davis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.adamldavis.java.example;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Writes and reads values of one type as a fixed number of bytes, so they can
+ * be stored in an {@link OffHeapMap} slab. Two values must be equal if and only
+ * if their serialized bytes are equal.
+ *
+ * @author Adam L. Davis
+ */
+public abstract class OffHeapSerializer<T> {
+
+	public static final OffHeapSerializer<Byte> BYTE = new OffHeapSerializer<Byte>(
+			1) {
+		public void write(ByteBuffer buf, int offset, Byte value) {
+			buf.put(offset, value);
+		}
+
+		public Byte read(ByteBuffer buf, int offset) {
+			return buf.get(offset);
+		}
+	};
+
+	public static final OffHeapSerializer<Boolean> BOOLEAN = new OffHeapSerializer<Boolean>(
+			1) {
+		public void write(ByteBuffer buf, int offset, Boolean value) {
+			buf.put(offset, (byte) (value ? 1 : 0));
+		}
+
+		public Boolean read(ByteBuffer buf, int offset) {
+			return buf.get(offset) != 0;
+		}
+	};
+
+	public static final OffHeapSerializer<Short> SHORT = new OffHeapSerializer<Short>(
+			2) {
+		public void write(ByteBuffer buf, int offset, Short value) {
+			buf.putShort(offset, value);
+		}
+
+		public Short read(ByteBuffer buf, int offset) {
+			return buf.getShort(offset);
+		}
+	};
+
+	public static final OffHeapSerializer<Character> CHARACTER = new OffHeapSerializer<Character>(
+			2) {
+		public void write(ByteBuffer buf, int offset, Character value) {
+			buf.putChar(offset, value);
+		}
+
+		public Character read(ByteBuffer buf, int offset) {
+			return buf.getChar(offset);
+		}
+	};
+
+	public static final OffHeapSerializer<Integer> INTEGER = new OffHeapSerializer<Integer>(
+			4) {
+		public void write(ByteBuffer buf, int offset, Integer value) {
+			buf.putInt(offset, value);
+		}
+
+		public Integer read(ByteBuffer buf, int offset) {
+			return buf.getInt(offset);
+		}
+	};
+
+	// floatToIntBits collapses NaNs, so equal bytes means Float.equals
+	public static final OffHeapSerializer<Float> FLOAT = new OffHeapSerializer<Float>(
+			4) {
+		public void write(ByteBuffer buf, int offset, Float value) {
+			buf.putInt(offset, Float.floatToIntBits(value));
+		}
+
+		public Float read(ByteBuffer buf, int offset) {
+			return Float.intBitsToFloat(buf.getInt(offset));
+		}
+	};
+
+	public static final OffHeapSerializer<Long> LONG = new OffHeapSerializer<Long>(
+			8) {
+		public void write(ByteBuffer buf, int offset, Long value) {
+			buf.putLong(offset, value);
+		}
+
+		public Long read(ByteBuffer buf, int offset) {
+			return buf.getLong(offset);
+		}
+	};
+
+	// doubleToLongBits collapses NaNs, so equal bytes means Double.equals
+	public static final OffHeapSerializer<Double> DOUBLE = new OffHeapSerializer<Double>(
+			8) {
+		public void write(ByteBuffer buf, int offset, Double value) {
+			buf.putLong(offset, Double.doubleToLongBits(value));
+		}
+
+		public Double read(ByteBuffer buf, int offset) {
+			return Double.longBitsToDouble(buf.getLong(offset));
+		}
+	};
+
+	private final int size;
+
+	protected OffHeapSerializer(int size) {
+		this.size = size;
+	}
+
+	/** Number of bytes every value takes up. */
+	public final int size() {
+		return size;
+	}
+
+	public abstract void write(ByteBuffer buf, int offset, T value);
+
+	public abstract T read(ByteBuffer buf, int offset);
+
+	/**
+	 * @return the built-in serializer for the given boxed primitive class.
+	 * @throws IllegalArgumentException
+	 *             if there is no fixed-width serializer for the class.
+	 */
+	@SuppressWarnings("unchecked")
+	public static <T> OffHeapSerializer<T> forClass(Class<T> tClass) {
+		switch (tClass.getName()) {
+		case "java.lang.Byte":
+			return (OffHeapSerializer<T>) BYTE;
+		case "java.lang.Boolean":
+			return (OffHeapSerializer<T>) BOOLEAN;
+		case "java.lang.Short":
+			return (OffHeapSerializer<T>) SHORT;
+		case "java.lang.Character":
+			return (OffHeapSerializer<T>) CHARACTER;
+		case "java.lang.Integer":
+			return (OffHeapSerializer<T>) INTEGER;
+		case "java.lang.Float":
+			return (OffHeapSerializer<T>) FLOAT;
+		case "java.lang.Long":
+			return (OffHeapSerializer<T>) LONG;
+		case "java.lang.Double":
+			return (OffHeapSerializer<T>) DOUBLE;
+		default:
+			throw new IllegalArgumentException("No off-heap serializer for "
+					+ tClass.getName());
+		}
+	}
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright 2014 Adam L. Davis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.adamldavis.java.example;
+
+import java.net.ConnectException;
+import java.net.MalformedURLException;
+import java.net.SocketTimeoutException;
+import java.net.UnknownHostException;
+
+import com.adamldavis.java.lazy.FetchException;
+
+/**
+ * Why the last poll of an endpoint failed, instead of just null.
+ */
+public enum PollError {
+	NONE, INVALID_URL, CONNECT, TIMEOUT, HTTP_STATUS, NOT_A_NUMBER, OVERFLOW, IO;
+
+	/** @return the error for an exception thrown by a fetch, IO if unknown. */
+	public static PollError of(Exception e) {
+		if (e instanceof FetchException) {
+			switch (((FetchException) e).kind) {
+			case INVALID_URL:
+				return INVALID_URL;
+			case CONNECT:
+				return CONNECT;
+			case TIMEOUT:
+				return TIMEOUT;
+			case HTTP_STATUS:
+				return HTTP_STATUS;
+			default:
+				return IO;
+			}
+		} else if (e instanceof NumberFormatException) {
+			return NOT_A_NUMBER;
+		} else if (e instanceof ArithmeticException) {
+			return OVERFLOW;
+		} else if (e instanceof MalformedURLException) {
+			return INVALID_URL;
+		} else if (e instanceof ConnectException
+				|| e instanceof UnknownHostException) {
+			return CONNECT;
+		} else if (e instanceof SocketTimeoutException) {
+			return TIMEOUT;
+		}
+		// any other IOException or RuntimeException, like the
+		// IllegalArgumentException for a port out of range
+		return IO;
+	}
+}
@@ -0,0 +1,234 @@
+/*
+ * Copyright 2014 Adam L. Davis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.adamldavis.java.example;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Makes any number of made-up Students for load testing. The same seed and
+ * settings always give the same students. Names repeat the way real ones do:
+ * the name of rank k is picked with a probability proportional to
+ * 1/(k+1)^s (Zipf's law), so a few names are very common and most are rare.
+ * Names are shared from a pool, so millions of students take little memory
+ * for their names.
+ * 
+ * <pre>
+ * RosterGenerator roster = new RosterGenerator(42).setMissingGpaRate(0.1)
+ * 		.setGpa(3.1, 0.4).setTypeWeights(1, 1, 2, 6);
+ * Student student = roster.next();
+ * </pre>
+ * 
+ * Not thread-safe; use {@link #withSeed(long)} to get one per thread.
+ * 
+ * @author Adam L. Davis
+ */
+public class RosterGenerator {
+
+	private static final String[] SYLLABLES = { "a", "ba", "bo", "da", "de",
+			"el", "fa", "ga", "ha", "in", "ja", "ka", "ke", "la", "li", "lo",
+			"ma", "mi", "na", "no", "o", "pa", "ra", "ri", "ro", "sa", "se",
+			"ta", "to", "va", "wi", "ya", "za" };
+
+	private final long seed;
+	private final Random random;
+
+	private int firstNames = 5000;
+	private int lastNames = 50000;
+	private double zipfExponent = 1.0;
+	private double[] typeWeights = { 1, 1, 1, 1 };
+	private double gpaMean = 3.0;
+	private double gpaDeviation = 0.5;
+	private double missingGpaRate = 0.05;
+
+	// built on first use from the settings above
+	private String[] firstNamePool, lastNamePool;
+	private double[] firstNameCdf, lastNameCdf, typeCdf;
+
+	public RosterGenerator(long seed) {
+		this.seed = seed;
+		this.random = new Random(seed);
+	}
+
+	/** A generator with the same settings (and name pools) but a new seed. */
+	public RosterGenerator withSeed(long seed) {
+		final RosterGenerator copy = new RosterGenerator(seed);
+		copy.firstNames = firstNames;
+		copy.lastNames = lastNames;
+		copy.zipfExponent = zipfExponent;
+		copy.typeWeights = typeWeights;
+		copy.gpaMean = gpaMean;
+		copy.gpaDeviation = gpaDeviation;
+		copy.missingGpaRate = missingGpaRate;
+		prepare();
+		copy.firstNamePool = firstNamePool;
+		copy.lastNamePool = lastNamePool;
+		copy.firstNameCdf = firstNameCdf;
+		copy.lastNameCdf = lastNameCdf;
+		copy.typeCdf = typeCdf;
+		return copy;
+	}
+
+	/** Number of different first and last names. */
+	public RosterGenerator setDistinctNames(int firstNames, int lastNames) {
+		if (firstNames < 1 || lastNames < 1) {
+			throw new IllegalArgumentException("Need at least one name");
+		}
+		this.firstNames = firstNames;
+		this.lastNames = lastNames;
+		return reset();
+	}
+
+	/** 0 makes all names equally common; the larger, the more repetition. */
+	public RosterGenerator setZipfExponent(double zipfExponent) {
+		if (zipfExponent < 0) {
+			throw new IllegalArgumentException("Negative exponent");
+		}
+		this.zipfExponent = zipfExponent;
+		return reset();
+	}
+
+	/** Relative weight of each StudentType, in declaration order. */
+	public RosterGenerator setTypeWeights(double... typeWeights) {
+		if (typeWeights.length != StudentType.values().length) {
+			throw new IllegalArgumentException("Need a weight for each of "
+					+ Arrays.toString(StudentType.values()));
+		}
+		double total = 0;
+		for (double weight : typeWeights) {
+			if (weight < 0) {
+				throw new IllegalArgumentException("Negative weight");
+			}
+			total += weight;
+		}
+		if (total == 0) {
+			throw new IllegalArgumentException("All weights are 0");
+		}
+		this.typeWeights = typeWeights.clone();
+		return reset();
+	}
+
+	/** GPAs are normal with this mean and deviation, clipped to 0-4. */
+	public RosterGenerator setGpa(double mean, double deviation) {
+		this.gpaMean = mean;
+		this.gpaDeviation = deviation;
+		return this;
+	}
+
+	/** The fraction of students without a GPA, from 0 to 1. */
+	public RosterGenerator setMissingGpaRate(double missingGpaRate) {
+		if (missingGpaRate < 0 || missingGpaRate > 1) {
+			throw new IllegalArgumentException("Rate must be from 0 to 1");
+		}
+		this.missingGpaRate = missingGpaRate;
+		return this;
+	}
+
+	public long getSeed() {
+		return seed;
+	}
+
+	public Student next() {
+		prepare();
+		return new Student(nextFirstName(), nextLastName(), nextType(),
+				nextGpa());
+	}
+
+	public String nextFirstName() {
+		prepare();
+		return firstNamePool[pick(firstNameCdf)];
+	}
+
+	public String nextLastName() {
+		prepare();
+		return lastNamePool[pick(lastNameCdf)];
+	}
+
+	public StudentType nextType() {
+		prepare();
+		return StudentType.values()[pick(typeCdf)];
+	}
+
+	/** @return a GPA rounded to hundredths, or null if it's missing. */
+	public Double nextGpa() {
+		return random.nextDouble() < missingGpaRate ? null : nextKnownGpa();
+	}
+
+	/** @return a GPA rounded to hundredths, ignoring the missing rate. */
+	public double nextKnownGpa() {
+		final double gpa = gpaMean + random.nextGaussian() * gpaDeviation;
+		return Math.round(Math.max(0, Math.min(4, gpa)) * 100) / 100d;
+	}
+
+	private RosterGenerator reset() {
+		firstNamePool = null;
+		return this;
+	}
+
+	private void prepare() {
+		if (firstNamePool != null) {
+			return;
+		}
+		lastNamePool = names(lastNames, 1);
+		lastNameCdf = zipf(lastNames, zipfExponent);
+		firstNameCdf = zipf(firstNames, zipfExponent);
+		typeCdf = cumulative(typeWeights);
+		firstNamePool = names(firstNames, 0); // last, marks it done
+	}
+
+	private int pick(double[] cdf) {
+		final int i = Arrays.binarySearch(cdf, random.nextDouble());
+		return Math.min(i < 0 ? -i - 1 : i, cdf.length - 1);
+	}
+
+	static double[] zipf(int n, double exponent) {
+		final double[] weights = new double[n];
+		for (int k = 0; k < n; k++) {
+			weights[k] = 1 / Math.pow(k + 1, exponent);
+		}
+		return cumulative(weights);
+	}
+
+	// normalized running totals, so the last one is 1
+	static double[] cumulative(double[] weights) {
+		final double[] cdf = new double[weights.length];
+		double total = 0;
+		for (int i = 0; i < weights.length; i++) {
+			total += weights[i];
+			cdf[i] = total;
+		}
+		for (int i = 0; i < cdf.length; i++) {
+			cdf[i] /= total;
+		}
+		return cdf;
+	}
+
+	// made of syllables, so they are pronounceable
+	static String[] names(int n, int salt) {
+		final String[] names = new String[n];
+		for (int k = 0; k < n; k++) {
+			final StringBuilder name = new StringBuilder();
+			int rest = k * 2 + salt; // first and last names differ
+			do {
+				name.append(SYLLABLES[rest % SYLLABLES.length]);
+				rest /= SYLLABLES.length;
+			} while (rest > 0);
+			name.setCharAt(0, Character.toUpperCase(name.charAt(0)));
+			names[k] = name.toString();
+		}
+		return names;
+	}
+}
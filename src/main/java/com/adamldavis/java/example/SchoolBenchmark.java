@@ -0,0 +1,124 @@
+/*
+ * Copyright 2014 Adam L. Davis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.adamldavis.java.example;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+import com.adamldavis.java.lazy.LatencyHistogram;
+
+/**
+ * Times the same queries on {@link School}, {@link TotallyLazySchool} and
+ * {@link StreamSchool} (sequential and parallel), all holding the same
+ * roster from a {@link RosterGenerator}. Each query runs a few warmup times
+ * that aren't counted so the JIT can settle, then a number of measured
+ * times. Lazy Iterables are walked to the end so every School does the same
+ * work.
+ * 
+ * <pre>
+ * java com.adamldavis.java.example.SchoolBenchmark [students] [warmups] [iterations]
+ * </pre>
+ * 
+ * @author Adam L. Davis
+ */
+public class SchoolBenchmark {
+
+	static volatile long sink; // keeps the JIT from dropping results
+
+	public static void main(String[] args) throws Exception {
+		final int students = args.length > 0 ? Integer.parseInt(args[0])
+				: 100000;
+		final int warmups = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+		final int iterations = args.length > 2 ? Integer.parseInt(args[2])
+				: 30;
+
+		final School school = new School();
+		final TotallyLazySchool lazySchool = new TotallyLazySchool();
+		final StreamSchool streamSchool = new StreamSchool(false);
+		final StreamSchool parallelSchool = new StreamSchool(true);
+		final RosterGenerator roster = new RosterGenerator(42);
+		for (int i = 0; i < students; i++) {
+			final Student s = roster.next();
+			final Double gpa = s.gpa.otherwise((Double) null);
+			school.addStudent(s.firstName, s.lastName, s.studentType, gpa);
+			lazySchool.addStudent(s.firstName, s.lastName, s.studentType, gpa);
+			streamSchool.addStudent(s.firstName, s.lastName, s.studentType,
+					gpa);
+			parallelSchool.addStudent(s.firstName, s.lastName, s.studentType,
+					gpa);
+		}
+		// nobody has this name, so finding it scans every student
+		final String firstName = "Nobody", lastName = "Nobody";
+
+		System.out.println(students + " students, " + warmups + " warmups, "
+				+ iterations + " iterations, "
+				+ Runtime.getRuntime().availableProcessors() + " cpus");
+
+		final Map<String, Callable<?>> queries = new LinkedHashMap<>();
+		queries.put("average School", () -> school.getAverageGPA());
+		queries.put("average TotallyLazy", () -> lazySchool.getAverageGPA());
+		queries.put("average Stream", () -> streamSchool.getAverageGPA());
+		queries.put("average Parallel", () -> parallelSchool.getAverageGPA());
+
+		queries.put("highest School",
+				() -> count(school.getStudentsWithHighestGPA()));
+		queries.put("highest TotallyLazy",
+				() -> count(lazySchool.getStudentsWithHighestGPA()));
+		queries.put("highest Stream",
+				() -> streamSchool.getStudentsWithHighestGPA().size());
+		queries.put("highest Parallel",
+				() -> parallelSchool.getStudentsWithHighestGPA().size());
+
+		queries.put("find School",
+				() -> school.findStudent(firstName, lastName));
+		queries.put("find TotallyLazy",
+				() -> lazySchool.findStudent(firstName, lastName));
+		queries.put("find Stream",
+				() -> streamSchool.findStudent(firstName, lastName));
+		queries.put("find Parallel",
+				() -> parallelSchool.findStudent(firstName, lastName));
+
+		for (Map.Entry<String, Callable<?>> query : queries.entrySet()) {
+			final LatencyHistogram histogram = time(query.getValue(), warmups,
+					iterations);
+			System.out.println(String.format("%-20s %s", query.getKey(),
+					histogram.summary(1e3, "us")));
+		}
+	}
+
+	static LatencyHistogram time(Callable<?> query, int warmups,
+			int iterations) throws Exception {
+		for (int i = 0; i < warmups; i++) {
+			sink += query.call().hashCode();
+		}
+		final LatencyHistogram histogram = new LatencyHistogram();
+		for (int i = 0; i < iterations; i++) {
+			final long start = System.nanoTime();
+			sink += query.call().hashCode();
+			histogram.record(System.nanoTime() - start);
+		}
+		return histogram;
+	}
+
+	static int count(Iterable<?> iterable) {
+		int count = 0;
+		for (Object o : iterable) {
+			count++;
+		}
+		return count;
+	}
+}
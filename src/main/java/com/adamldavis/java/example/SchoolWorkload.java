@@ -0,0 +1,365 @@
+/*
+ * Copyright 2014 Adam L. Davis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.adamldavis.java.example;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import com.adamldavis.java.lazy.LatencyHistogram;
+
+/**
+ * Replays a mix of finds, adds, GPA updates and aggregates against a School
+ * from several threads, and reports the throughput and the latency
+ * percentiles of each kind of operation. The School is first loaded with
+ * students from a {@link RosterGenerator}, and finds look up names from that
+ * roster, so they mostly hit. The same seed and settings replay the same
+ * operations on each thread.
+ * 
+ * None of the Schools are thread-safe, so operations share a read/write
+ * lock: finds and aggregates run together, adds and updates run alone.
+ * Latencies include the wait for the lock, as a caller would see them.
+ * 
+ * <pre>
+ * java com.adamldavis.java.example.SchoolWorkload [students] [operations] [threads] [school|lazy|stream|parallel|all]
+ * </pre>
+ * 
+ * @author Adam L. Davis
+ */
+public class SchoolWorkload {
+
+	public enum Operation {
+		FIND, ADD, UPDATE, AGGREGATE
+	}
+
+	/** The operations of a School, whichever library it uses. */
+	public interface Target {
+		void add(Student student) throws MissingDataException;
+
+		/** @return true if the student was found. */
+		boolean find(String firstName, String lastName);
+
+		/** @return true if the student was found. */
+		boolean updateGpa(String firstName, String lastName, double gpa)
+				throws MissingDataException;
+
+		/** Computes something over all the students, like the average GPA. */
+		Object aggregate();
+	}
+
+	private final RosterGenerator roster;
+	private int threads = 4;
+	private long operations = 100000;
+	private double[] mix = { 70, 10, 10, 10 };
+
+	public SchoolWorkload(RosterGenerator roster) {
+		this.roster = roster;
+	}
+
+	public SchoolWorkload setThreads(int threads) {
+		if (threads < 1) {
+			throw new IllegalArgumentException("Need at least one thread");
+		}
+		this.threads = threads;
+		return this;
+	}
+
+	/** Total operations for all threads together, after the preload. */
+	public SchoolWorkload setOperations(long operations) {
+		this.operations = operations;
+		return this;
+	}
+
+	/** Relative weights of FIND, ADD, UPDATE and AGGREGATE. */
+	public SchoolWorkload setMix(double find, double add, double update,
+			double aggregate) {
+		if (find < 0 || add < 0 || update < 0 || aggregate < 0
+				|| find + add + update + aggregate == 0) {
+			throw new IllegalArgumentException(
+					"Weights must not be negative or all 0");
+		}
+		this.mix = new double[] { find, add, update, aggregate };
+		return this;
+	}
+
+	/**
+	 * Adds preload students to the target (not timed), then runs the
+	 * operations on all threads at once.
+	 */
+	public Result run(String name, final Target target, int preload)
+			throws MissingDataException, InterruptedException,
+			ExecutionException {
+		final RosterGenerator loader = roster.withSeed(roster.getSeed());
+		final String[] firstNames = new String[preload];
+		final String[] lastNames = new String[preload];
+		for (int i = 0; i < preload; i++) {
+			final Student student = loader.next();
+			target.add(student);
+			firstNames[i] = student.firstName;
+			lastNames[i] = student.lastName;
+		}
+
+		final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+		final Map<Operation, LatencyHistogram> histograms = new EnumMap<>(
+				Operation.class);
+		for (Operation operation : Operation.values()) {
+			histograms.put(operation, new LatencyHistogram());
+		}
+		final AtomicLong found = new AtomicLong();
+		final double[] cdf = RosterGenerator.cumulative(mix);
+		final CountDownLatch start = new CountDownLatch(1);
+
+		final List<Callable<Void>> workers = new ArrayList<>();
+		for (int t = 0; t < threads; t++) {
+			final long count = operations / threads
+					+ (t < operations % threads ? 1 : 0);
+			final RosterGenerator students = roster.withSeed(roster
+					.getSeed() + 1 + t);
+			final Random random = new Random(roster.getSeed() * 31 + t);
+			workers.add(() -> {
+				start.await();
+				for (long i = 0; i < count; i++) {
+					final Operation operation = pick(cdf, random.nextDouble());
+					final boolean write = operation == Operation.ADD
+							|| operation == Operation.UPDATE;
+					final Lock held = write ? lock.writeLock() : lock
+							.readLock();
+					final int who = preload == 0 ? 0 : random.nextInt(preload);
+					final Student student = operation == Operation.ADD ? students
+							.next() : null;
+					final double gpa = operation == Operation.UPDATE ? students
+							.nextKnownGpa() : 0;
+
+					final long begin = System.nanoTime();
+					held.lock();
+					try {
+						if (execute(target, operation, student, preload == 0
+								? null : firstNames[who], preload == 0 ? null
+								: lastNames[who], gpa)) {
+							found.incrementAndGet();
+						}
+					} finally {
+						held.unlock();
+					}
+					histograms.get(operation).record(
+							System.nanoTime() - begin);
+				}
+				return null;
+			});
+		}
+
+		final ExecutorService pool = Executors.newFixedThreadPool(threads);
+		try {
+			final List<Future<Void>> futures = new ArrayList<>();
+			for (Callable<Void> worker : workers) {
+				futures.add(pool.submit(worker));
+			}
+			final long begin = System.nanoTime();
+			start.countDown();
+			for (Future<Void> future : futures) {
+				future.get();
+			}
+			return new Result(name, threads, System.nanoTime() - begin,
+					found.get(), histograms);
+		} finally {
+			pool.shutdownNow();
+		}
+	}
+
+	private static boolean execute(Target target, Operation operation,
+			Student student, String firstName, String lastName, double gpa)
+			throws MissingDataException {
+		switch (operation) {
+		case FIND:
+			return firstName != null && target.find(firstName, lastName);
+		case ADD:
+			target.add(student);
+			return false;
+		case UPDATE:
+			return firstName != null
+					&& target.updateGpa(firstName, lastName, gpa);
+		default:
+			target.aggregate();
+			return false;
+		}
+	}
+
+	private static Operation pick(double[] cdf, double u) {
+		for (int i = 0; i < cdf.length - 1; i++) {
+			if (u < cdf[i]) {
+				return Operation.values()[i];
+			}
+		}
+		return Operation.values()[cdf.length - 1];
+	}
+
+	/** Throughput and latencies of one run. */
+	public static class Result {
+		public final String name;
+		public final int threads;
+		public final long nanos;
+		/** Finds and updates that found their student. */
+		public final long found;
+		public final Map<Operation, LatencyHistogram> histograms;
+
+		Result(String name, int threads, long nanos, long found,
+				Map<Operation, LatencyHistogram> histograms) {
+			this.name = name;
+			this.threads = threads;
+			this.nanos = nanos;
+			this.found = found;
+			this.histograms = histograms;
+		}
+
+		public long getOperations() {
+			long operations = 0;
+			for (LatencyHistogram histogram : histograms.values()) {
+				operations += histogram.getCount();
+			}
+			return operations;
+		}
+
+		/** Operations per second, all threads together. */
+		public double getThroughput() {
+			return getOperations() * 1e9 / nanos;
+		}
+
+		@Override
+		public String toString() {
+			final StringBuilder s = new StringBuilder(String.format(
+					"%s: %d operations on %d threads in %.1fms, %.0f ops/s",
+					name, getOperations(), threads, nanos / 1e6,
+					getThroughput()));
+			for (Map.Entry<Operation, LatencyHistogram> entry : histograms
+					.entrySet()) {
+				if (entry.getValue().getCount() > 0) {
+					s.append(String.format("%n  %-10s %s", entry.getKey(),
+							entry.getValue().summary(1e3, "us")));
+				}
+			}
+			return s.toString();
+		}
+	}
+
+	public static Target target(final School school) {
+		return new Target() {
+			public void add(Student s) throws MissingDataException {
+				school.addStudent(s.firstName, s.lastName, s.studentType,
+						s.gpa.otherwise((Double) null));
+			}
+
+			public boolean find(String firstName, String lastName) {
+				return school.findStudent(firstName, lastName).isKnown();
+			}
+
+			public boolean updateGpa(String firstName, String lastName,
+					double gpa) throws MissingDataException {
+				return school.updateStudentGpa(firstName, lastName, gpa)
+						.isKnown();
+			}
+
+			public Object aggregate() {
+				return school.getAverageGPA();
+			}
+		};
+	}
+
+	public static Target target(final TotallyLazySchool school) {
+		return new Target() {
+			public void add(Student s) throws MissingDataException {
+				school.addStudent(s.firstName, s.lastName, s.studentType,
+						s.gpa.otherwise((Double) null));
+			}
+
+			public boolean find(String firstName, String lastName) {
+				return school.findStudent(firstName, lastName).isDefined();
+			}
+
+			public boolean updateGpa(String firstName, String lastName,
+					double gpa) throws MissingDataException {
+				return school.updateStudentGpa(firstName, lastName, gpa)
+						.isDefined();
+			}
+
+			public Object aggregate() {
+				return school.getAverageGPA();
+			}
+		};
+	}
+
+	public static Target target(final StreamSchool school) {
+		return new Target() {
+			public void add(Student s) throws MissingDataException {
+				school.addStudent(s.firstName, s.lastName, s.studentType,
+						s.gpa.otherwise((Double) null));
+			}
+
+			public boolean find(String firstName, String lastName) {
+				return school.findStudent(firstName, lastName).isPresent();
+			}
+
+			public boolean updateGpa(String firstName, String lastName,
+					double gpa) throws MissingDataException {
+				return school.updateStudentGpa(firstName, lastName, gpa)
+						.isPresent();
+			}
+
+			public Object aggregate() {
+				return school.getAverageGPA();
+			}
+		};
+	}
+
+	public static void main(String[] args) throws Exception {
+		final int students = args.length > 0 ? Integer.parseInt(args[0])
+				: 100000;
+		final long operations = args.length > 1 ? Long.parseLong(args[1])
+				: 10000;
+		final int threads = args.length > 2 ? Integer.parseInt(args[2]) : 4;
+		final String which = args.length > 3 ? args[3] : "all";
+
+		final SchoolWorkload workload = new SchoolWorkload(
+				new RosterGenerator(42)).setThreads(threads).setOperations(
+				operations);
+		if (which.equals("all") || which.equals("school")) {
+			System.out.println(workload.run("School", target(new School()),
+					students));
+		}
+		if (which.equals("all") || which.equals("lazy")) {
+			System.out.println(workload.run("TotallyLazySchool",
+					target(new TotallyLazySchool()), students));
+		}
+		if (which.equals("all") || which.equals("stream")) {
+			System.out.println(workload.run("StreamSchool",
+					target(new StreamSchool(false)), students));
+		}
+		if (which.equals("all") || which.equals("parallel")) {
+			System.out.println(workload.run("StreamSchool parallel",
+					target(new StreamSchool(true)), students));
+		}
+	}
+}
@@ -0,0 +1,231 @@
+/*
+ * Copyright 2014 Adam L. Davis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.adamldavis.java.example;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.DoubleSummaryStatistics;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.OptionalDouble;
+import java.util.OptionalInt;
+import java.util.Set;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.DoubleStream;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * Modern Java: Example of School with students in memory using Java 8
+ * streams. Same operations as {@link School} and {@link TotallyLazySchool},
+ * but the predicates are lambdas and the GPA aggregates run on a DoubleStream.
+ * Since Student keeps its GPA as a Maybe&lt;Double&gt;, the GPAs are also
+ * copied into a primitive double[] beside the list (NaN when unknown), so the
+ * aggregates read plain doubles without unboxing one Double per student.
+ * 
+ * Students are kept in an ArrayList, which splits evenly for parallel streams;
+ * with parallel on, queries over rosters of at least
+ * {@value #PARALLEL_THRESHOLD} students run on the common ForkJoinPool.
+ * Smaller rosters always run sequentially, since splitting would cost more
+ * than it saves. Like the other Schools this is not thread-safe.
+ * 
+ * @author Adam L. Davis
+ */
+public class StreamSchool {
+
+	public static final int PARALLEL_THRESHOLD = 10000;
+
+	private final List<Student> students = new ArrayList<>();
+	private final Set<Student> unique = new HashSet<>(); // Set semantics
+	private double[] gpas = new double[16]; // students.get(i)'s GPA, or NaN
+	private final boolean parallel;
+
+	public StreamSchool() {
+		this(false);
+	}
+
+	/** @param parallel whether to run queries on large rosters in parallel. */
+	public StreamSchool(boolean parallel) {
+		this.parallel = parallel;
+	}
+
+	public boolean isParallel() {
+		return parallel;
+	}
+
+	public int size() {
+		return students.size();
+	}
+
+	// add a new Student without a GPA
+	public void addStudent(final String firstName, final String lastName,
+			final String studentType) throws MissingDataException {
+
+		addStudent(firstName, lastName, studentType, null);
+	}
+
+	// add a Student with a GPA (or null GPA)
+	public void addStudent(final String firstName, final String lastName,
+			final String studentType, final Double gpa)
+			throws MissingDataException {
+
+		final StudentType type = StudentType.valueOf(Optional.ofNullable(
+				studentType).orElseThrow(
+				() -> new MissingDataException("Missing student type")));
+
+		addStudent(firstName, lastName, type, gpa);
+	}
+
+	// add a Student with enum StudentType and a GPA (or null GPA)
+	public void addStudent(final String firstName, final String lastName,
+			final StudentType type, final Double gpa)
+			throws MissingDataException {
+
+		final String fn = Optional.ofNullable(firstName).orElseThrow(
+				() -> new MissingDataException("Missing first-name"));
+		final String ln = Optional.ofNullable(lastName).orElseThrow(
+				() -> new MissingDataException("Missing last-name"));
+
+		final Student student = new Student(fn, ln, type, gpa);
+		if (unique.add(student)) {
+			if (students.size() == gpas.length) {
+				gpas = Arrays.copyOf(gpas, gpas.length * 2);
+			}
+			gpas[students.size()] = gpa == null ? Double.NaN : gpa;
+			students.add(student);
+		}
+	}
+
+	// assumes student's are unique on first/last-name (never do this)
+	public Optional<Student> findStudent(final String firstName,
+			final String lastName) {
+		return stream().filter(named(firstName, lastName)).findFirst();
+	}
+
+	// returns the student if found; otherwise return empty()
+	public Optional<Student> removeStudent(final String firstName,
+			final String lastName) {
+		final Predicate<Student> named = named(firstName, lastName);
+		final OptionalInt index = indexes().filter(
+				i -> named.test(students.get(i))).findFirst();
+
+		if (!index.isPresent()) {
+			return Optional.empty();
+		}
+		final int i = index.getAsInt();
+		final Student student = students.remove(i);
+		System.arraycopy(gpas, i + 1, gpas, i, students.size() - i);
+		unique.remove(student);
+		return Optional.of(student);
+	}
+
+	// returns the old student if found; otherwise return empty()
+	public Optional<Student> updateStudentGpa(final String firstName,
+			final String lastName, final double gpa)
+			throws MissingDataException {
+		final Optional<Student> maybeStudent = removeStudent(firstName,
+				lastName);
+
+		if (maybeStudent.isPresent()) {
+			addStudent(firstName, lastName, maybeStudent.get().studentType,
+					gpa);
+		}
+		return maybeStudent;
+	}
+
+	public OptionalDouble getHighestGPA() {
+		return gpas().max();
+	}
+
+	public OptionalDouble getLowestGPA() {
+		return gpas().min();
+	}
+
+	// rounded to 5 digits like the other Schools; DoubleStream.sum is
+	// compensated, so this is accurate without BigDecimal per student.
+	public OptionalDouble getAverageGPA() {
+		final OptionalDouble average = gpas().average();
+		if (!average.isPresent()) {
+			return average;
+		}
+		return OptionalDouble.of(new BigDecimal(average.getAsDouble())
+				.setScale(5, RoundingMode.HALF_UP).doubleValue());
+	}
+
+	/** Count, min, max, sum and average of the known GPAs in one pass. */
+	public DoubleSummaryStatistics getGpaStatistics() {
+		return gpas().summaryStatistics();
+	}
+
+	public List<Student> getStudentsWithLowestGPA() {
+		final OptionalDouble lowest = getLowestGPA();
+		return lowest.isPresent() ? getStudentsWithGpa(lowest.getAsDouble())
+				: new ArrayList<Student>();
+	}
+
+	public List<Student> getStudentsWithHighestGPA() {
+		final OptionalDouble highest = getHighestGPA();
+		return highest.isPresent() ? getStudentsWithGpa(highest.getAsDouble())
+				: new ArrayList<Student>();
+	}
+
+	public List<Student> getStudentsWithNoGPA() {
+		return stream().filter(s -> s.gpa.isEmpty())
+				.collect(Collectors.toList());
+	}
+
+	// returns the students with exactly this GPA, in the order added.
+	public List<Student> getStudentsWithGpa(final double gpa) {
+		return indexes().filter(i -> gpas[i] == gpa).mapToObj(students::get)
+				.collect(Collectors.toList());
+	}
+
+	// returns the Students with known GPAs.
+	public List<Student> getStudentsWithGpa() {
+		return stream().filter(s -> s.gpa.isKnown())
+				.collect(Collectors.toList());
+	}
+
+	private DoubleStream gpas() {
+		final DoubleStream gpas = Arrays.stream(this.gpas, 0, students.size())
+				.filter(g -> !Double.isNaN(g));
+		return isParallelNow() ? gpas.parallel() : gpas;
+	}
+
+	private Stream<Student> stream() {
+		return isParallelNow() ? students.parallelStream() : students
+				.stream();
+	}
+
+	private IntStream indexes() {
+		final IntStream indexes = IntStream.range(0, students.size());
+		return isParallelNow() ? indexes.parallel() : indexes;
+	}
+
+	private boolean isParallelNow() {
+		return parallel && students.size() >= PARALLEL_THRESHOLD;
+	}
+
+	private static Predicate<Student> named(final String firstName,
+			final String lastName) {
+		return s -> s.firstName.equals(firstName)
+				&& s.lastName.equals(lastName);
+	}
+}
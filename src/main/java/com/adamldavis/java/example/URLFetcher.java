@@ -18,6 +18,8 @@ package com.adamldavis.java.example;
 import java.io.IOException;
 import java.net.URL;
 
+import com.adamldavis.java.lazy.FetchEngine;
+
 /**
  * This provides an easy way to fetch a URL. This is only meant as an example of
  * Java 7 multi-catch statements.
@@ -44,4 +46,23 @@ public class URLFetcher {
 			return null;
 		}
 	}
+
+	/**
+	 * Fetches a number over a pooled connection and parses it from the bytes,
+	 * telling failures apart instead of returning null.
+	 * 
+	 * @param sink
+	 *            reused for every call on one thread.
+	 * @throws NumberFormatException
+	 *             if the body isn't a number.
+	 * @throws ArithmeticException
+	 *             if it doesn't fit in a long.
+	 * @throws IOException
+	 *             a {@link com.adamldavis.java.lazy.FetchException} for a bad
+	 *             URL, connect or timeout failure, or an error status.
+	 */
+	public static long fetchURLAsLong(FetchEngine engine, DigitSink sink,
+			String urlString) throws IOException {
+		return engine.stream(urlString, sink).getValue();
+	}
 }
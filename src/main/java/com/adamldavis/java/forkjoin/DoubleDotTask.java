@@ -0,0 +1,36 @@
+package com.adamldavis.java.forkjoin;
+
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * The dot product of a[from, to) and b[from, to): splits the range like
+ * {@link DoubleReduceTask} and runs
+ * {@link LeafKernel#dot(double[], double[], int, int)} over each leaf.
+ */
+class DoubleDotTask extends RecursiveTask<Double> {
+	final double[] a;
+	final double[] b;
+	final int from;
+	final int to;
+	final int threshold;
+
+	DoubleDotTask(double[] a, double[] b, int from, int to, int threshold) {
+		this.a = a;
+		this.b = b;
+		this.from = from;
+		this.to = to;
+		this.threshold = threshold;
+	}
+
+	@Override
+	protected Double compute() {
+		if (to - from <= threshold) {
+			return LeafKernel.get().dot(a, b, from, to);
+		}
+		final int mid = (from + to) >>> 1;
+		DoubleDotTask left = new DoubleDotTask(a, b, from, mid, threshold);
+		left.fork();
+		double right = new DoubleDotTask(a, b, mid, to, threshold).compute();
+		return left.join() + right;
+	}
+}
@@ -0,0 +1,14 @@
+package com.adamldavis.java.forkjoin;
+
+/**
+ * An associative operator used to reduce double values. Same contract as
+ * {@link LongOp}.
+ */
+public interface DoubleOp {
+
+	double identity();
+
+	double apply(double acc, double element);
+
+	double combine(double left, double right);
+}
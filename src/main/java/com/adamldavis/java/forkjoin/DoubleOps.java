@@ -0,0 +1,49 @@
+package com.adamldavis.java.forkjoin;
+
+/** The common operators for double arrays. */
+public enum DoubleOps implements DoubleOp {
+	SUM {
+		public double identity() {
+			return 0;
+		}
+
+		public double apply(double acc, double element) {
+			return acc + element;
+		}
+	},
+	MIN {
+		public double identity() {
+			return Double.POSITIVE_INFINITY;
+		}
+
+		public double apply(double acc, double element) {
+			return Math.min(acc, element);
+		}
+	},
+	MAX {
+		public double identity() {
+			return Double.NEGATIVE_INFINITY;
+		}
+
+		public double apply(double acc, double element) {
+			return Math.max(acc, element);
+		}
+	},
+	COUNT {
+		public double identity() {
+			return 0;
+		}
+
+		public double apply(double acc, double element) {
+			return acc + 1;
+		}
+
+		public double combine(double left, double right) {
+			return left + right;
+		}
+	};
+
+	public double combine(double left, double right) {
+		return apply(left, right);
+	}
+}
@@ -0,0 +1,149 @@
+package com.adamldavis.java.forkjoin;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Records how a fork-join computation actually split up: split depth, leaf
+ * count and sizes, how long each worker spent in leaves, and how many tasks
+ * were stolen. Each worker thread writes only to its own recorder, so the
+ * overhead is a ThreadLocal lookup and two nanoTime calls per leaf.
+ *
+ * Usage: stats = ForkJoinStats.start(pool); pass it to the tasks; stats.stop();
+ * then print stats.report(). Only read it after the invocation has returned.
+ */
+public class ForkJoinStats {
+
+	private final ForkJoinPool pool;
+	private final long startNanos;
+	private final long stealsAtStart;
+	private long elapsedNanos;
+	private long steals;
+
+	private final Queue<Recorder> recorders = new ConcurrentLinkedQueue<>();
+	private final ThreadLocal<Recorder> recorder = new ThreadLocal<Recorder>() {
+		protected Recorder initialValue() {
+			Recorder r = new Recorder(Thread.currentThread().getName());
+			recorders.add(r);
+			return r;
+		}
+	};
+
+	private ForkJoinStats(ForkJoinPool pool) {
+		this.pool = pool;
+		this.stealsAtStart = pool.getStealCount();
+		this.startNanos = System.nanoTime();
+	}
+
+	public static ForkJoinStats start(ForkJoinPool pool) {
+		return new ForkJoinStats(pool);
+	}
+
+	/** Samples the pool's steal count and stops the clock. */
+	public ForkJoinStats stop() {
+		elapsedNanos = System.nanoTime() - startNanos;
+		steals = pool.getStealCount() - stealsAtStart;
+		return this;
+	}
+
+	/** Called by a task that splits itself at the given depth. */
+	public void split(int depth) {
+		Recorder r = recorder.get();
+		r.splits++;
+		r.maxDepth = Math.max(r.maxDepth, depth);
+	}
+
+	/** Called by a task that computed a leaf of size elements directly. */
+	public void leaf(int depth, long size, long nanos) {
+		Recorder r = recorder.get();
+		r.leaves++;
+		r.maxDepth = Math.max(r.maxDepth, depth);
+		r.elements += size;
+		r.busyNanos += nanos;
+		r.minLeaf = Math.min(r.minLeaf, size);
+		r.maxLeaf = Math.max(r.maxLeaf, size);
+		r.leafSizes[63 - Long.numberOfLeadingZeros(Math.max(size, 1))]++;
+	}
+
+	public long getSteals() {
+		return steals;
+	}
+
+	public long getLeaves() {
+		long leaves = 0;
+		for (Recorder r : recorders) {
+			leaves += r.leaves;
+		}
+		return leaves;
+	}
+
+	public int getMaxDepth() {
+		int depth = 0;
+		for (Recorder r : recorders) {
+			depth = Math.max(depth, r.maxDepth);
+		}
+		return depth;
+	}
+
+	public String report() {
+		long splits = 0, leaves = 0, elements = 0, busy = 0;
+		long minLeaf = Long.MAX_VALUE, maxLeaf = 0;
+		final long[] leafSizes = new long[64];
+		for (Recorder r : recorders) {
+			splits += r.splits;
+			leaves += r.leaves;
+			elements += r.elements;
+			busy += r.busyNanos;
+			minLeaf = Math.min(minLeaf, r.minLeaf);
+			maxLeaf = Math.max(maxLeaf, r.maxLeaf);
+			for (int i = 0; i < 64; i++) {
+				leafSizes[i] += r.leafSizes[i];
+			}
+		}
+		final StringBuilder sb = new StringBuilder();
+		sb.append(String.format(
+				"elapsed %.3f ms, parallelism %d, pool size %d, steals %d%n",
+				elapsedNanos / 1e6, pool.getParallelism(), pool.getPoolSize(),
+				steals));
+		sb.append(String.format("splits %d, leaves %d, max depth %d%n",
+				splits, leaves, getMaxDepth()));
+		if (leaves == 0) {
+			return sb.toString();
+		}
+		sb.append(String.format(
+				"leaf size min %d, avg %d, max %d, %.3f ns/element%n",
+				minLeaf, elements / leaves, maxLeaf, busy
+						/ (double) Math.max(elements, 1)));
+		for (int i = 0; i < 64; i++) {
+			if (leafSizes[i] > 0) {
+				sb.append(String.format("  leaves of %d-%d: %d%n", 1L << i,
+						(1L << (i + 1)) - 1, leafSizes[i]));
+			}
+		}
+		for (Recorder r : recorders) {
+			sb.append(String.format(
+					"  %s: %d leaves, busy %.3f ms (%.0f%%)%n", r.thread,
+					r.leaves, r.busyNanos / 1e6, 100.0 * r.busyNanos
+							/ Math.max(elapsedNanos, 1)));
+		}
+		return sb.toString();
+	}
+
+	// only ever written by its own thread
+	static class Recorder {
+		final String thread;
+		long splits;
+		long leaves;
+		int maxDepth;
+		long elements;
+		long busyNanos;
+		long minLeaf = Long.MAX_VALUE;
+		long maxLeaf;
+		final long[] leafSizes = new long[64];
+
+		Recorder(String thread) {
+			this.thread = thread;
+		}
+	}
+}
@@ -1,19 +1,60 @@
 package com.adamldavis.java.forkjoin;
 
+import java.io.IOException;
+import java.nio.file.Paths;
 import java.util.concurrent.ForkJoinPool;
 
 public class ForkJoinTest {
 	static ForkJoinPool forkJoinPool = new ForkJoinPool();
 	public static final int LENGTH = 2000;
-	
-	public static void main(String[] args) {
-		int [] numbers = new int[LENGTH];
-		// Create  an array with some values. 
-		for(int i=0; i<LENGTH; i++){
+
+	// pass a length to try bigger arrays, 1000000000 needs about -Xmx5g
+	// or "--file <path> int|long" to sum a big-endian binary file
+	// add -Dforkjoin.stats=true to print how the work was split up
+	public static void main(String[] args) throws IOException {
+		if (args.length > 1 && args[0].equals("--file")) {
+			sumFile(args[1], args.length > 2 ? args[2] : "int");
+			return;
+		}
+		final int length = args.length > 0 ? Integer.parseInt(args[0]) : LENGTH;
+		int [] numbers = new int[length];
+		// Create  an array with some values.
+		for(int i=0; i<length; i++){
 			numbers[i] = i * 2;
 		}
-		int sum = forkJoinPool.invoke(new NumberDividerTask(numbers));
-	  
+		if (Boolean.getBoolean("forkjoin.stats")) {
+			printStats(numbers);
+			return;
+		}
+		long start = System.nanoTime();
+		long sum = ParallelReduce.sum(forkJoinPool, numbers);
+		long millis = (System.nanoTime() - start) / 1000000;
+
+		System.out.println("Sum: "+sum+" in "+millis+"ms");
+	}
+
+	static void printStats(int[] numbers) {
+		ForkJoinStats stats = ForkJoinStats.start(forkJoinPool);
+		long sum = ParallelReduce.reduce(forkJoinPool, numbers, 0,
+				numbers.length, LongOps.SUM, stats);
 		System.out.println("Sum: "+sum);
+		System.out.print(stats.stop().report());
+
+		if (numbers.length <= 1 << 20) { // it copies too much beyond that
+			stats = ForkJoinStats.start(forkJoinPool);
+			int oldSum = forkJoinPool.invoke(new NumberDividerTask(numbers,
+					stats, 0));
+			System.out.println("NumberDividerTask sum: "+oldSum);
+			System.out.print(stats.stop().report());
+		}
+	}
+
+	static void sumFile(String path, String type) throws IOException {
+		long start = System.nanoTime();
+		long sum = MappedReduce.sum(forkJoinPool, Paths.get(path),
+				NumberType.valueOf(type.toUpperCase()));
+		long millis = (System.nanoTime() - start) / 1000000;
+
+		System.out.println("Sum: "+sum+" in "+millis+"ms");
 	}
 }
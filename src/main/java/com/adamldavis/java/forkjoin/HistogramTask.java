@@ -0,0 +1,51 @@
+package com.adamldavis.java.forkjoin;
+
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Counts numbers[from, to) into buckets of the given width starting at min.
+ * Each leaf fills its own counts with
+ * {@link LeafKernel#histogram(int[], int, int, int, int, long[])} and the
+ * halves are added together on the way back up, so no counter is shared
+ * between threads.
+ */
+class HistogramTask extends RecursiveTask<long[]> {
+	final int[] numbers;
+	final int from;
+	final int to;
+	final int min;
+	final int width;
+	final int buckets;
+	final int threshold;
+
+	HistogramTask(int[] numbers, int from, int to, int min, int width,
+			int buckets, int threshold) {
+		this.numbers = numbers;
+		this.from = from;
+		this.to = to;
+		this.min = min;
+		this.width = width;
+		this.buckets = buckets;
+		this.threshold = threshold;
+	}
+
+	@Override
+	protected long[] compute() {
+		if (to - from <= threshold) {
+			final long[] counts = new long[buckets];
+			LeafKernel.get().histogram(numbers, from, to, min, width, counts);
+			return counts;
+		}
+		final int mid = (from + to) >>> 1;
+		HistogramTask left = new HistogramTask(numbers, from, mid, min, width,
+				buckets, threshold);
+		left.fork();
+		final long[] counts = new HistogramTask(numbers, mid, to, min, width,
+				buckets, threshold).compute();
+		final long[] leftCounts = left.join();
+		for (int i = 0; i < buckets; i++) {
+			counts[i] += leftCounts[i];
+		}
+		return counts;
+	}
+}
@@ -0,0 +1,36 @@
+package com.adamldavis.java.forkjoin;
+
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * The dot product of a[from, to) and b[from, to): splits the range like
+ * {@link IntReduceTask} and runs {@link LeafKernel#dot(int[], int[], int, int)}
+ * over each leaf.
+ */
+class IntDotTask extends RecursiveTask<Long> {
+	final int[] a;
+	final int[] b;
+	final int from;
+	final int to;
+	final int threshold;
+
+	IntDotTask(int[] a, int[] b, int from, int to, int threshold) {
+		this.a = a;
+		this.b = b;
+		this.from = from;
+		this.to = to;
+		this.threshold = threshold;
+	}
+
+	@Override
+	protected Long compute() {
+		if (to - from <= threshold) {
+			return LeafKernel.get().dot(a, b, from, to);
+		}
+		final int mid = (from + to) >>> 1;
+		IntDotTask left = new IntDotTask(a, b, from, mid, threshold);
+		left.fork();
+		long right = new IntDotTask(a, b, mid, to, threshold).compute();
+		return left.join() + right;
+	}
+}
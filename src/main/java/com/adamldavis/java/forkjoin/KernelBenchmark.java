@@ -0,0 +1,77 @@
+package com.adamldavis.java.forkjoin;
+
+import java.util.Random;
+
+/**
+ * Times the scalar and unrolled leaf kernels on a leaf-sized array. Run with
+ * -XX:+UseSuperWord (the default) and compare with -XX:-UseSuperWord to see
+ * how much comes from vectorization on a given CPU.
+ */
+public class KernelBenchmark {
+
+	static final int LENGTH = 1 << 16; // about what one leaf holds
+	static final int WARMUP = 2000;
+	static final int RUNS = 5000;
+
+	// results go here so the JIT can't throw the work away
+	static long sink;
+
+	public static void main(String[] args) {
+		final Random random = new Random(1);
+		final int[] ints = new int[LENGTH];
+		final int[] other = new int[LENGTH];
+		final double[] doubles = new double[LENGTH];
+		for (int i = 0; i < LENGTH; i++) {
+			ints[i] = random.nextInt();
+			other[i] = random.nextInt();
+			doubles[i] = random.nextDouble();
+		}
+		for (LeafKernel kernel : new LeafKernel[] { LeafKernel.SCALAR,
+				LeafKernel.UNROLLED, LeafKernel.SCALAR, LeafKernel.UNROLLED }) {
+			final String name = kernel == LeafKernel.SCALAR ? "scalar"
+					: "unrolled";
+			for (String op : new String[] { "sum", "min", "max", "dot",
+					"dsum", "histogram" }) {
+				for (int i = 0; i < WARMUP; i++) {
+					run(kernel, op, ints, other, doubles);
+				}
+				long start = System.nanoTime();
+				for (int i = 0; i < RUNS; i++) {
+					run(kernel, op, ints, other, doubles);
+				}
+				double nanos = (System.nanoTime() - start)
+						/ ((double) RUNS * LENGTH);
+				System.out.printf("%-9s %-10s %6.3f ns/element%n", name, op,
+						nanos);
+			}
+		}
+		System.out.println(sink == 42 ? "" : "done");
+	}
+
+	static void run(LeafKernel kernel, String op, int[] ints, int[] other,
+			double[] doubles) {
+		switch (op) {
+		case "sum":
+			sink += kernel.sum(ints, 0, LENGTH);
+			break;
+		case "min":
+			sink += kernel.min(ints, 0, LENGTH);
+			break;
+		case "max":
+			sink += kernel.max(ints, 0, LENGTH);
+			break;
+		case "dot":
+			sink += kernel.dot(ints, other, 0, LENGTH);
+			break;
+		case "dsum":
+			sink += (long) kernel.sum(doubles, 0, LENGTH);
+			break;
+		case "histogram":
+			long[] counts = new long[64];
+			kernel.histogram(ints, 0, LENGTH, Integer.MIN_VALUE, 1 << 26,
+					counts);
+			sink += counts[7];
+			break;
+		}
+	}
+}
@@ -0,0 +1,591 @@
+package com.adamldavis.java.forkjoin;
+
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+
+/**
+ * The loops run over a leaf once the reduction tasks stop splitting. The
+ * default "unrolled" kernel keeps four independent accumulators so the CPU
+ * (and HotSpot's superword optimization) can work on several elements at
+ * once; the "scalar" kernel is the plain one-element-at-a-time loop. Pick one
+ * with -Dforkjoin.kernel=scalar|unrolled.
+ *
+ * The IntBuffer and LongBuffer versions read with absolute get(i), so they
+ * run straight over a (mapped) buffer without copying it to the heap.
+ */
+public abstract class LeafKernel {
+
+	public static final LeafKernel SCALAR = new Scalar();
+	public static final LeafKernel UNROLLED = new Unrolled();
+
+	private static final LeafKernel DEFAULT = forName(System.getProperty(
+			"forkjoin.kernel", "unrolled"));
+
+	/** The kernel selected when the JVM started. */
+	public static LeafKernel get() {
+		return DEFAULT;
+	}
+
+	public static LeafKernel forName(String name) {
+		switch (name) {
+		case "scalar":
+			return SCALAR;
+		case "unrolled":
+			return UNROLLED;
+		default:
+			throw new IllegalArgumentException("Unknown kernel: " + name);
+		}
+	}
+
+	public abstract long sum(int[] a, int from, int to);
+
+	public abstract long sum(long[] a, int from, int to);
+
+	public abstract double sum(double[] a, int from, int to);
+
+	public abstract long min(int[] a, int from, int to);
+
+	public abstract long min(long[] a, int from, int to);
+
+	public abstract double min(double[] a, int from, int to);
+
+	public abstract long max(int[] a, int from, int to);
+
+	public abstract long max(long[] a, int from, int to);
+
+	public abstract double max(double[] a, int from, int to);
+
+	public abstract long sum(IntBuffer a, int from, int to);
+
+	public abstract long sum(LongBuffer a, int from, int to);
+
+	public abstract long min(IntBuffer a, int from, int to);
+
+	public abstract long min(LongBuffer a, int from, int to);
+
+	public abstract long max(IntBuffer a, int from, int to);
+
+	public abstract long max(LongBuffer a, int from, int to);
+
+	public abstract long dot(int[] a, int[] b, int from, int to);
+
+	public abstract double dot(double[] a, double[] b, int from, int to);
+
+	/**
+	 * Adds a[from, to) into counts, where bucket i holds values in [min + i *
+	 * width, min + (i + 1) * width). Values outside the buckets are counted in
+	 * the first or last one.
+	 */
+	public abstract void histogram(int[] a, int from, int to, int min,
+			int width, long[] counts);
+
+	/** Uses a kernel for the built-in operators, otherwise op one at a time. */
+	public long reduce(LongOp op, int[] a, int from, int to) {
+		if (op == LongOps.SUM) {
+			return sum(a, from, to);
+		} else if (op == LongOps.MIN) {
+			return from == to ? op.identity() : min(a, from, to);
+		} else if (op == LongOps.MAX) {
+			return from == to ? op.identity() : max(a, from, to);
+		} else if (op == LongOps.COUNT) {
+			return to - from;
+		}
+		long acc = op.identity();
+		for (int i = from; i < to; i++) {
+			acc = op.apply(acc, a[i]);
+		}
+		return acc;
+	}
+
+	public long reduce(LongOp op, long[] a, int from, int to) {
+		if (op == LongOps.SUM) {
+			return sum(a, from, to);
+		} else if (op == LongOps.MIN) {
+			return from == to ? op.identity() : min(a, from, to);
+		} else if (op == LongOps.MAX) {
+			return from == to ? op.identity() : max(a, from, to);
+		} else if (op == LongOps.COUNT) {
+			return to - from;
+		}
+		long acc = op.identity();
+		for (int i = from; i < to; i++) {
+			acc = op.apply(acc, a[i]);
+		}
+		return acc;
+	}
+
+	public long reduce(LongOp op, IntBuffer a, int from, int to) {
+		if (op == LongOps.SUM) {
+			return sum(a, from, to);
+		} else if (op == LongOps.MIN) {
+			return from == to ? op.identity() : min(a, from, to);
+		} else if (op == LongOps.MAX) {
+			return from == to ? op.identity() : max(a, from, to);
+		} else if (op == LongOps.COUNT) {
+			return to - from;
+		}
+		long acc = op.identity();
+		for (int i = from; i < to; i++) {
+			acc = op.apply(acc, a.get(i));
+		}
+		return acc;
+	}
+
+	public long reduce(LongOp op, LongBuffer a, int from, int to) {
+		if (op == LongOps.SUM) {
+			return sum(a, from, to);
+		} else if (op == LongOps.MIN) {
+			return from == to ? op.identity() : min(a, from, to);
+		} else if (op == LongOps.MAX) {
+			return from == to ? op.identity() : max(a, from, to);
+		} else if (op == LongOps.COUNT) {
+			return to - from;
+		}
+		long acc = op.identity();
+		for (int i = from; i < to; i++) {
+			acc = op.apply(acc, a.get(i));
+		}
+		return acc;
+	}
+
+	public double reduce(DoubleOp op, double[] a, int from, int to) {
+		if (op == DoubleOps.SUM) {
+			return sum(a, from, to);
+		} else if (op == DoubleOps.MIN) {
+			return from == to ? op.identity() : min(a, from, to);
+		} else if (op == DoubleOps.MAX) {
+			return from == to ? op.identity() : max(a, from, to);
+		} else if (op == DoubleOps.COUNT) {
+			return to - from;
+		}
+		double acc = op.identity();
+		for (int i = from; i < to; i++) {
+			acc = op.apply(acc, a[i]);
+		}
+		return acc;
+	}
+
+	static int bucket(int value, int min, int width, int buckets) {
+		final long b = ((long) value - min) / width;
+		return b < 0 ? 0 : b >= buckets ? buckets - 1 : (int) b;
+	}
+
+	static class Scalar extends LeafKernel {
+
+		public long sum(int[] a, int from, int to) {
+			long sum = 0;
+			for (int i = from; i < to; i++) {
+				sum += a[i];
+			}
+			return sum;
+		}
+
+		public long sum(long[] a, int from, int to) {
+			long sum = 0;
+			for (int i = from; i < to; i++) {
+				sum += a[i];
+			}
+			return sum;
+		}
+
+		public double sum(double[] a, int from, int to) {
+			double sum = 0;
+			for (int i = from; i < to; i++) {
+				sum += a[i];
+			}
+			return sum;
+		}
+
+		public long min(int[] a, int from, int to) {
+			int min = Integer.MAX_VALUE;
+			for (int i = from; i < to; i++) {
+				min = Math.min(min, a[i]);
+			}
+			return min;
+		}
+
+		public long min(long[] a, int from, int to) {
+			long min = Long.MAX_VALUE;
+			for (int i = from; i < to; i++) {
+				min = Math.min(min, a[i]);
+			}
+			return min;
+		}
+
+		public double min(double[] a, int from, int to) {
+			double min = Double.POSITIVE_INFINITY;
+			for (int i = from; i < to; i++) {
+				min = Math.min(min, a[i]);
+			}
+			return min;
+		}
+
+		public long max(int[] a, int from, int to) {
+			int max = Integer.MIN_VALUE;
+			for (int i = from; i < to; i++) {
+				max = Math.max(max, a[i]);
+			}
+			return max;
+		}
+
+		public long max(long[] a, int from, int to) {
+			long max = Long.MIN_VALUE;
+			for (int i = from; i < to; i++) {
+				max = Math.max(max, a[i]);
+			}
+			return max;
+		}
+
+		public double max(double[] a, int from, int to) {
+			double max = Double.NEGATIVE_INFINITY;
+			for (int i = from; i < to; i++) {
+				max = Math.max(max, a[i]);
+			}
+			return max;
+		}
+
+		public long sum(IntBuffer a, int from, int to) {
+			long sum = 0;
+			for (int i = from; i < to; i++) {
+				sum += a.get(i);
+			}
+			return sum;
+		}
+
+		public long sum(LongBuffer a, int from, int to) {
+			long sum = 0;
+			for (int i = from; i < to; i++) {
+				sum += a.get(i);
+			}
+			return sum;
+		}
+
+		public long min(IntBuffer a, int from, int to) {
+			int min = Integer.MAX_VALUE;
+			for (int i = from; i < to; i++) {
+				min = Math.min(min, a.get(i));
+			}
+			return min;
+		}
+
+		public long min(LongBuffer a, int from, int to) {
+			long min = Long.MAX_VALUE;
+			for (int i = from; i < to; i++) {
+				min = Math.min(min, a.get(i));
+			}
+			return min;
+		}
+
+		public long max(IntBuffer a, int from, int to) {
+			int max = Integer.MIN_VALUE;
+			for (int i = from; i < to; i++) {
+				max = Math.max(max, a.get(i));
+			}
+			return max;
+		}
+
+		public long max(LongBuffer a, int from, int to) {
+			long max = Long.MIN_VALUE;
+			for (int i = from; i < to; i++) {
+				max = Math.max(max, a.get(i));
+			}
+			return max;
+		}
+
+		public long dot(int[] a, int[] b, int from, int to) {
+			long dot = 0;
+			for (int i = from; i < to; i++) {
+				dot += (long) a[i] * b[i];
+			}
+			return dot;
+		}
+
+		public double dot(double[] a, double[] b, int from, int to) {
+			double dot = 0;
+			for (int i = from; i < to; i++) {
+				dot += a[i] * b[i];
+			}
+			return dot;
+		}
+
+		public void histogram(int[] a, int from, int to, int min, int width,
+				long[] counts) {
+			for (int i = from; i < to; i++) {
+				counts[bucket(a[i], min, width, counts.length)]++;
+			}
+		}
+	}
+
+	// Four accumulators break the dependency on the previous iteration.
+	static class Unrolled extends LeafKernel {
+
+		public long sum(int[] a, int from, int to) {
+			long s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+			int i = from;
+			for (; i < to - 3; i += 4) {
+				s0 += a[i];
+				s1 += a[i + 1];
+				s2 += a[i + 2];
+				s3 += a[i + 3];
+			}
+			for (; i < to; i++) {
+				s0 += a[i];
+			}
+			return (s0 + s1) + (s2 + s3);
+		}
+
+		public long sum(long[] a, int from, int to) {
+			long s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+			int i = from;
+			for (; i < to - 3; i += 4) {
+				s0 += a[i];
+				s1 += a[i + 1];
+				s2 += a[i + 2];
+				s3 += a[i + 3];
+			}
+			for (; i < to; i++) {
+				s0 += a[i];
+			}
+			return (s0 + s1) + (s2 + s3);
+		}
+
+		// note this adds doubles in a different order than Scalar does
+		public double sum(double[] a, int from, int to) {
+			double s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+			int i = from;
+			for (; i < to - 3; i += 4) {
+				s0 += a[i];
+				s1 += a[i + 1];
+				s2 += a[i + 2];
+				s3 += a[i + 3];
+			}
+			for (; i < to; i++) {
+				s0 += a[i];
+			}
+			return (s0 + s1) + (s2 + s3);
+		}
+
+		public long min(int[] a, int from, int to) {
+			int m0 = Integer.MAX_VALUE, m1 = m0, m2 = m0, m3 = m0;
+			int i = from;
+			for (; i < to - 3; i += 4) {
+				m0 = Math.min(m0, a[i]);
+				m1 = Math.min(m1, a[i + 1]);
+				m2 = Math.min(m2, a[i + 2]);
+				m3 = Math.min(m3, a[i + 3]);
+			}
+			for (; i < to; i++) {
+				m0 = Math.min(m0, a[i]);
+			}
+			return Math.min(Math.min(m0, m1), Math.min(m2, m3));
+		}
+
+		public long min(long[] a, int from, int to) {
+			long m0 = Long.MAX_VALUE, m1 = m0, m2 = m0, m3 = m0;
+			int i = from;
+			for (; i < to - 3; i += 4) {
+				m0 = Math.min(m0, a[i]);
+				m1 = Math.min(m1, a[i + 1]);
+				m2 = Math.min(m2, a[i + 2]);
+				m3 = Math.min(m3, a[i + 3]);
+			}
+			for (; i < to; i++) {
+				m0 = Math.min(m0, a[i]);
+			}
+			return Math.min(Math.min(m0, m1), Math.min(m2, m3));
+		}
+
+		public double min(double[] a, int from, int to) {
+			double m0 = Double.POSITIVE_INFINITY, m1 = m0, m2 = m0, m3 = m0;
+			int i = from;
+			for (; i < to - 3; i += 4) {
+				m0 = Math.min(m0, a[i]);
+				m1 = Math.min(m1, a[i + 1]);
+				m2 = Math.min(m2, a[i + 2]);
+				m3 = Math.min(m3, a[i + 3]);
+			}
+			for (; i < to; i++) {
+				m0 = Math.min(m0, a[i]);
+			}
+			return Math.min(Math.min(m0, m1), Math.min(m2, m3));
+		}
+
+		public long max(int[] a, int from, int to) {
+			int m0 = Integer.MIN_VALUE, m1 = m0, m2 = m0, m3 = m0;
+			int i = from;
+			for (; i < to - 3; i += 4) {
+				m0 = Math.max(m0, a[i]);
+				m1 = Math.max(m1, a[i + 1]);
+				m2 = Math.max(m2, a[i + 2]);
+				m3 = Math.max(m3, a[i + 3]);
+			}
+			for (; i < to; i++) {
+				m0 = Math.max(m0, a[i]);
+			}
+			return Math.max(Math.max(m0, m1), Math.max(m2, m3));
+		}
+
+		public long max(long[] a, int from, int to) {
+			long m0 = Long.MIN_VALUE, m1 = m0, m2 = m0, m3 = m0;
+			int i = from;
+			for (; i < to - 3; i += 4) {
+				m0 = Math.max(m0, a[i]);
+				m1 = Math.max(m1, a[i + 1]);
+				m2 = Math.max(m2, a[i + 2]);
+				m3 = Math.max(m3, a[i + 3]);
+			}
+			for (; i < to; i++) {
+				m0 = Math.max(m0, a[i]);
+			}
+			return Math.max(Math.max(m0, m1), Math.max(m2, m3));
+		}
+
+		public double max(double[] a, int from, int to) {
+			double m0 = Double.NEGATIVE_INFINITY, m1 = m0, m2 = m0, m3 = m0;
+			int i = from;
+			for (; i < to - 3; i += 4) {
+				m0 = Math.max(m0, a[i]);
+				m1 = Math.max(m1, a[i + 1]);
+				m2 = Math.max(m2, a[i + 2]);
+				m3 = Math.max(m3, a[i + 3]);
+			}
+			for (; i < to; i++) {
+				m0 = Math.max(m0, a[i]);
+			}
+			return Math.max(Math.max(m0, m1), Math.max(m2, m3));
+		}
+
+		public long sum(IntBuffer a, int from, int to) {
+			long s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+			int i = from;
+			for (; i < to - 3; i += 4) {
+				s0 += a.get(i);
+				s1 += a.get(i + 1);
+				s2 += a.get(i + 2);
+				s3 += a.get(i + 3);
+			}
+			for (; i < to; i++) {
+				s0 += a.get(i);
+			}
+			return (s0 + s1) + (s2 + s3);
+		}
+
+		public long sum(LongBuffer a, int from, int to) {
+			long s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+			int i = from;
+			for (; i < to - 3; i += 4) {
+				s0 += a.get(i);
+				s1 += a.get(i + 1);
+				s2 += a.get(i + 2);
+				s3 += a.get(i + 3);
+			}
+			for (; i < to; i++) {
+				s0 += a.get(i);
+			}
+			return (s0 + s1) + (s2 + s3);
+		}
+
+		public long min(IntBuffer a, int from, int to) {
+			int m0 = Integer.MAX_VALUE, m1 = m0, m2 = m0, m3 = m0;
+			int i = from;
+			for (; i < to - 3; i += 4) {
+				m0 = Math.min(m0, a.get(i));
+				m1 = Math.min(m1, a.get(i + 1));
+				m2 = Math.min(m2, a.get(i + 2));
+				m3 = Math.min(m3, a.get(i + 3));
+			}
+			for (; i < to; i++) {
+				m0 = Math.min(m0, a.get(i));
+			}
+			return Math.min(Math.min(m0, m1), Math.min(m2, m3));
+		}
+
+		public long min(LongBuffer a, int from, int to) {
+			long m0 = Long.MAX_VALUE, m1 = m0, m2 = m0, m3 = m0;
+			int i = from;
+			for (; i < to - 3; i += 4) {
+				m0 = Math.min(m0, a.get(i));
+				m1 = Math.min(m1, a.get(i + 1));
+				m2 = Math.min(m2, a.get(i + 2));
+				m3 = Math.min(m3, a.get(i + 3));
+			}
+			for (; i < to; i++) {
+				m0 = Math.min(m0, a.get(i));
+			}
+			return Math.min(Math.min(m0, m1), Math.min(m2, m3));
+		}
+
+		public long max(IntBuffer a, int from, int to) {
+			int m0 = Integer.MIN_VALUE, m1 = m0, m2 = m0, m3 = m0;
+			int i = from;
+			for (; i < to - 3; i += 4) {
+				m0 = Math.max(m0, a.get(i));
+				m1 = Math.max(m1, a.get(i + 1));
+				m2 = Math.max(m2, a.get(i + 2));
+				m3 = Math.max(m3, a.get(i + 3));
+			}
+			for (; i < to; i++) {
+				m0 = Math.max(m0, a.get(i));
+			}
+			return Math.max(Math.max(m0, m1), Math.max(m2, m3));
+		}
+
+		public long max(LongBuffer a, int from, int to) {
+			long m0 = Long.MIN_VALUE, m1 = m0, m2 = m0, m3 = m0;
+			int i = from;
+			for (; i < to - 3; i += 4) {
+				m0 = Math.max(m0, a.get(i));
+				m1 = Math.max(m1, a.get(i + 1));
+				m2 = Math.max(m2, a.get(i + 2));
+				m3 = Math.max(m3, a.get(i + 3));
+			}
+			for (; i < to; i++) {
+				m0 = Math.max(m0, a.get(i));
+			}
+			return Math.max(Math.max(m0, m1), Math.max(m2, m3));
+		}
+
+		// C2 already unrolls the plain widening loop well and measures
+		// faster than splitting it by hand (see KernelBenchmark)
+		public long dot(int[] a, int[] b, int from, int to) {
+			return SCALAR.dot(a, b, from, to);
+		}
+
+		public double dot(double[] a, double[] b, int from, int to) {
+			double d0 = 0, d1 = 0, d2 = 0, d3 = 0;
+			int i = from;
+			for (; i < to - 3; i += 4) {
+				d0 += a[i] * b[i];
+				d1 += a[i + 1] * b[i + 1];
+				d2 += a[i + 2] * b[i + 2];
+				d3 += a[i + 3] * b[i + 3];
+			}
+			for (; i < to; i++) {
+				d0 += a[i] * b[i];
+			}
+			return (d0 + d1) + (d2 + d3);
+		}
+
+		// Separate tables so repeated values don't wait on each other's
+		// increments, merged at the end.
+		public void histogram(int[] a, int from, int to, int min, int width,
+				long[] counts) {
+			final int buckets = counts.length;
+			final int[] c0 = new int[buckets], c1 = new int[buckets];
+			final int[] c2 = new int[buckets], c3 = new int[buckets];
+			int i = from;
+			for (; i < to - 3; i += 4) {
+				c0[bucket(a[i], min, width, buckets)]++;
+				c1[bucket(a[i + 1], min, width, buckets)]++;
+				c2[bucket(a[i + 2], min, width, buckets)]++;
+				c3[bucket(a[i + 3], min, width, buckets)]++;
+			}
+			for (; i < to; i++) {
+				c0[bucket(a[i], min, width, buckets)]++;
+			}
+			for (int b = 0; b < buckets; b++) {
+				counts[b] += (long) c0[b] + c1[b] + c2[b] + c3[b];
+			}
+		}
+	}
+}
@@ -0,0 +1,16 @@
+package com.adamldavis.java.forkjoin;
+
+/**
+ * An associative operator used to reduce int or long values into a long.
+ * {@link #apply} folds one element into a partial result and {@link #combine}
+ * merges two partial results, so identity() combined with anything must leave
+ * it unchanged.
+ */
+public interface LongOp {
+
+	long identity();
+
+	long apply(long acc, long element);
+
+	long combine(long left, long right);
+}
@@ -0,0 +1,49 @@
+package com.adamldavis.java.forkjoin;
+
+/** The common operators for int and long arrays. */
+public enum LongOps implements LongOp {
+	SUM {
+		public long identity() {
+			return 0;
+		}
+
+		public long apply(long acc, long element) {
+			return acc + element;
+		}
+	},
+	MIN {
+		public long identity() {
+			return Long.MAX_VALUE;
+		}
+
+		public long apply(long acc, long element) {
+			return Math.min(acc, element);
+		}
+	},
+	MAX {
+		public long identity() {
+			return Long.MIN_VALUE;
+		}
+
+		public long apply(long acc, long element) {
+			return Math.max(acc, element);
+		}
+	},
+	COUNT {
+		public long identity() {
+			return 0;
+		}
+
+		public long apply(long acc, long element) {
+			return acc + 1;
+		}
+
+		public long combine(long left, long right) {
+			return left + right;
+		}
+	};
+
+	public long combine(long left, long right) {
+		return apply(left, right);
+	}
+}
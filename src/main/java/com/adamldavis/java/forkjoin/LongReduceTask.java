@@ -0,0 +1,59 @@
+package com.adamldavis.java.forkjoin;
+
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Reduces numbers[from, to) without copying: splits the range in half until it
+ * is no bigger than threshold, then runs a {@link LeafKernel}
+ * over the leaf in place.
+ */
+class LongReduceTask extends RecursiveTask<Long> {
+	final long[] numbers;
+	final int from;
+	final int to;
+	final LongOp op;
+	final int threshold;
+	final ForkJoinStats stats; // null when not instrumented
+	final int depth;
+
+	LongReduceTask(long[] numbers, int from, int to, LongOp op,
+			int threshold) {
+		this(numbers, from, to, op, threshold, null, 0);
+	}
+
+	LongReduceTask(long[] numbers, int from, int to, LongOp op,
+			int threshold, ForkJoinStats stats, int depth) {
+		this.numbers = numbers;
+		this.from = from;
+		this.to = to;
+		this.op = op;
+		this.threshold = threshold;
+		this.stats = stats;
+		this.depth = depth;
+	}
+
+	@Override
+	protected Long compute() {
+		if (to - from <= threshold) {
+			if (stats == null) {
+				return LeafKernel.get().reduce(op, numbers, from, to);
+			}
+			final long start = System.nanoTime();
+			final long result = LeafKernel.get().reduce(op, numbers, from,
+					to);
+			stats.leaf(depth, to - from, System.nanoTime() - start);
+			return result;
+		}
+		if (stats != null) {
+			stats.split(depth);
+		}
+		final int mid = (from + to) >>> 1;
+		LongReduceTask left = new LongReduceTask(numbers, from, mid, op,
+				threshold, stats, depth + 1);
+		left.fork();
+		// work on the right half ourselves instead of forking it too
+		long right = new LongReduceTask(numbers, mid, to, op, threshold,
+				stats, depth + 1).compute();
+		return op.combine(left.join(), right);
+	}
+}
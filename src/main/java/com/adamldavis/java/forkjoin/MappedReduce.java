@@ -0,0 +1,54 @@
+package com.adamldavis.java.forkjoin;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Parallel reductions over binary files of ints or longs that are too big for
+ * the heap. The file is memory-mapped one window at a time, so it is only
+ * limited by address space and the OS page cache does the reading.
+ */
+public final class MappedReduce {
+
+	/** Largest window a single leaf maps, in bytes. */
+	public static final int WINDOW_BYTES = 64 * 1024 * 1024;
+
+	private MappedReduce() {
+	}
+
+	/**
+	 * Reduces every value in the file. A partial value at the end of the file
+	 * is ignored.
+	 */
+	public static long reduce(ForkJoinPool pool, Path file, NumberType type,
+			ByteOrder order, LongOp op) throws IOException {
+		try (FileChannel channel = FileChannel.open(file,
+				StandardOpenOption.READ)) {
+			final long count = channel.size() / type.bytes;
+			final long leaves = (long) pool.getParallelism()
+					* ParallelReduce.LEAVES_PER_THREAD;
+			final long threshold = Math.min(WINDOW_BYTES / type.bytes,
+					Math.max(ParallelReduce.MIN_THRESHOLD, count / leaves));
+			try {
+				return pool.invoke(new MappedReduceTask(channel, type, order,
+						0, count, op, threshold));
+			} catch (RuntimeException e) {
+				for (Throwable t = e; t != null; t = t.getCause()) {
+					if (t instanceof IOException) {
+						throw (IOException) t;
+					}
+				}
+				throw e;
+			}
+		}
+	}
+
+	public static long sum(ForkJoinPool pool, Path file, NumberType type)
+			throws IOException {
+		return reduce(pool, file, type, ByteOrder.BIG_ENDIAN, LongOps.SUM);
+	}
+}
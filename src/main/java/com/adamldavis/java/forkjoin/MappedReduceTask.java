@@ -0,0 +1,66 @@
+package com.adamldavis.java.forkjoin;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Reduces the values at element indexes [from, to) of a numeric file. Splits
+ * by file offset like {@link IntReduceTask} splits an array; each leaf maps
+ * just its own window of the file and runs the {@link LeafKernel} straight
+ * over the mapped buffer, so nothing is copied onto the heap.
+ */
+class MappedReduceTask extends RecursiveTask<Long> {
+
+	final FileChannel channel;
+	final NumberType type;
+	final ByteOrder order;
+	final long from;
+	final long to;
+	final LongOp op;
+	final long threshold;
+
+	MappedReduceTask(FileChannel channel, NumberType type, ByteOrder order,
+			long from, long to, LongOp op, long threshold) {
+		this.channel = channel;
+		this.type = type;
+		this.order = order;
+		this.from = from;
+		this.to = to;
+		this.op = op;
+		this.threshold = threshold;
+	}
+
+	@Override
+	protected Long compute() {
+		if (to - from <= threshold) {
+			try {
+				return reduceWindow();
+			} catch (IOException e) {
+				throw new RuntimeException(e);
+			}
+		}
+		final long mid = (from + to) >>> 1;
+		MappedReduceTask left = new MappedReduceTask(channel, type, order,
+				from, mid, op, threshold);
+		left.fork();
+		long right = new MappedReduceTask(channel, type, order, mid, to, op,
+				threshold).compute();
+		return op.combine(left.join(), right);
+	}
+
+	private long reduceWindow() throws IOException {
+		final MappedByteBuffer window = channel.map(
+				FileChannel.MapMode.READ_ONLY, from * type.bytes, (to - from)
+						* type.bytes);
+		window.order(order);
+		final int count = (int) (to - from);
+
+		if (type == NumberType.INT) {
+			return LeafKernel.get().reduce(op, window.asIntBuffer(), 0, count);
+		}
+		return LeafKernel.get().reduce(op, window.asLongBuffer(), 0, count);
+	}
+}
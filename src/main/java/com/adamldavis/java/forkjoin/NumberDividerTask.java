@@ -7,26 +7,39 @@ import java.util.concurrent.RecursiveTask;
 
 class NumberDividerTask extends RecursiveTask<Integer> {
 	int[] numbers;
+	ForkJoinStats stats; // optional
+	int depth;
 
 	NumberDividerTask(int[] numbers) {
 		this.numbers = numbers;
 	}
 
+	NumberDividerTask(int[] numbers, ForkJoinStats stats, int depth) {
+		this.numbers = numbers;
+		this.stats = stats;
+		this.depth = depth;
+	}
+
 	@Override
 	protected Integer compute() {
 		int sum = 0;
 		List<RecursiveTask<Integer>> forks = new ArrayList<>();
 		if (numbers.length > 20) {
+			if (stats != null) {
+				stats.split(depth);
+			}
 			NumberDividerTask task1 = new NumberDividerTask(Arrays.copyOfRange(
-					numbers, 0, numbers.length / 2));
+					numbers, 0, numbers.length / 2), stats, depth + 1);
 			NumberDividerTask task2 = new NumberDividerTask(Arrays.copyOfRange(
-					numbers, numbers.length / 2, numbers.length));
+					numbers, numbers.length / 2, numbers.length), stats,
+					depth + 1);
 			forks.add(task1);
 			forks.add(task2);
 			task1.fork();
 			task2.fork();
 		} else {
-			SumCalculatorTask sumCalculatorTask = new SumCalculatorTask(numbers);
+			SumCalculatorTask sumCalculatorTask = new SumCalculatorTask(
+					numbers, stats, depth + 1);
 			forks.add(sumCalculatorTask);
 			sumCalculatorTask.fork();
 		}
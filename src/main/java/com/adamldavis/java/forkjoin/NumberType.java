@@ -0,0 +1,12 @@
+package com.adamldavis.java.forkjoin;
+
+/** The fixed-width values a numeric file can hold. */
+public enum NumberType {
+	INT(4), LONG(8);
+
+	public final int bytes;
+
+	NumberType(int bytes) {
+		this.bytes = bytes;
+	}
+}
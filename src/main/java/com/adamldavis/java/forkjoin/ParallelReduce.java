@@ -0,0 +1,143 @@
+package com.adamldavis.java.forkjoin;
+
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Parallel reductions over (array, from, to) ranges. Unlike
+ * {@link NumberDividerTask} nothing is copied when splitting, leaves are sized
+ * from the pool's parallelism, and int values are accumulated into a long so
+ * large sums don't overflow.
+ */
+public final class ParallelReduce {
+
+	/** Leaves smaller than this cost more to fork than to just add up. */
+	static final int MIN_THRESHOLD = 1 << 13;
+
+	/** Aim for this many leaves per worker thread to even out the load. */
+	static final int LEAVES_PER_THREAD = 8;
+
+	private ParallelReduce() {
+	}
+
+	/** The leaf size for an array of the given length and pool parallelism. */
+	public static int threshold(int length, int parallelism) {
+		return Math.max(MIN_THRESHOLD, length
+				/ (Math.max(parallelism, 1) * LEAVES_PER_THREAD));
+	}
+
+	public static long reduce(ForkJoinPool pool, int[] numbers, int from,
+			int to, LongOp op) {
+		return reduce(pool, numbers, from, to, op, null);
+	}
+
+	public static long reduce(ForkJoinPool pool, long[] numbers, int from,
+			int to, LongOp op) {
+		return reduce(pool, numbers, from, to, op, null);
+	}
+
+	public static double reduce(ForkJoinPool pool, double[] numbers, int from,
+			int to, DoubleOp op) {
+		return reduce(pool, numbers, from, to, op, null);
+	}
+
+	/** Same as the other reduce but records into stats if it isn't null. */
+	public static long reduce(ForkJoinPool pool, int[] numbers, int from,
+			int to, LongOp op, ForkJoinStats stats) {
+		checkRange(numbers.length, from, to);
+		return pool.invoke(new IntReduceTask(numbers, from, to, op, threshold(
+				to - from, pool.getParallelism()), stats, 0));
+	}
+
+	public static long reduce(ForkJoinPool pool, long[] numbers, int from,
+			int to, LongOp op, ForkJoinStats stats) {
+		checkRange(numbers.length, from, to);
+		return pool.invoke(new LongReduceTask(numbers, from, to, op,
+				threshold(to - from, pool.getParallelism()), stats, 0));
+	}
+
+	public static double reduce(ForkJoinPool pool, double[] numbers, int from,
+			int to, DoubleOp op, ForkJoinStats stats) {
+		checkRange(numbers.length, from, to);
+		return pool.invoke(new DoubleReduceTask(numbers, from, to, op,
+				threshold(to - from, pool.getParallelism()), stats, 0));
+	}
+
+	public static long reduce(ForkJoinPool pool, int[] numbers, LongOp op) {
+		return reduce(pool, numbers, 0, numbers.length, op);
+	}
+
+	public static long reduce(ForkJoinPool pool, long[] numbers, LongOp op) {
+		return reduce(pool, numbers, 0, numbers.length, op);
+	}
+
+	public static double reduce(ForkJoinPool pool, double[] numbers,
+			DoubleOp op) {
+		return reduce(pool, numbers, 0, numbers.length, op);
+	}
+
+	public static long sum(ForkJoinPool pool, int[] numbers) {
+		return reduce(pool, numbers, LongOps.SUM);
+	}
+
+	public static long sum(ForkJoinPool pool, long[] numbers) {
+		return reduce(pool, numbers, LongOps.SUM);
+	}
+
+	public static double sum(ForkJoinPool pool, double[] numbers) {
+		return reduce(pool, numbers, DoubleOps.SUM);
+	}
+
+	/** The sum of a[i] * b[i], accumulated in a long. */
+	public static long dot(ForkJoinPool pool, int[] a, int[] b) {
+		checkLengths(a.length, b.length);
+		return pool.invoke(new IntDotTask(a, b, 0, a.length, threshold(
+				a.length, pool.getParallelism())));
+	}
+
+	public static double dot(ForkJoinPool pool, double[] a, double[] b) {
+		checkLengths(a.length, b.length);
+		return pool.invoke(new DoubleDotTask(a, b, 0, a.length, threshold(
+				a.length, pool.getParallelism())));
+	}
+
+	/**
+	 * Counts numbers[from, to) into the given number of buckets, where bucket
+	 * i holds values in [min + i * width, min + (i + 1) * width). Values
+	 * outside the buckets are counted in the first or last one.
+	 */
+	public static long[] histogram(ForkJoinPool pool, int[] numbers, int from,
+			int to, int min, int width, int buckets) {
+		checkRange(numbers.length, from, to);
+		if (width <= 0 || buckets <= 0) {
+			throw new IllegalArgumentException("width(" + width
+					+ ") and buckets(" + buckets + ") must be positive");
+		}
+		return pool.invoke(new HistogramTask(numbers, from, to, min, width,
+				buckets, threshold(to - from, pool.getParallelism())));
+	}
+
+	public static long[] histogram(ForkJoinPool pool, int[] numbers, int min,
+			int width, int buckets) {
+		return histogram(pool, numbers, 0, numbers.length, min, width, buckets);
+	}
+
+	static void checkLengths(int a, int b) {
+		if (a != b) {
+			throw new IllegalArgumentException("lengths differ: " + a + " != "
+					+ b);
+		}
+	}
+
+	static void checkRange(int length, int from, int to) {
+		if (from > to) {
+			throw new IllegalArgumentException("from(" + from + ") > to(" + to
+					+ ")");
+		}
+		if (from < 0) {
+			throw new ArrayIndexOutOfBoundsException(from);
+		}
+		if (to > length) {
+			throw new ArrayIndexOutOfBoundsException(to);
+		}
+	}
+}
@@ -0,0 +1,256 @@
+package com.adamldavis.java.forkjoin;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * In-place parallel inclusive prefix scans (cumulative sums, running min/max,
+ * running counts) over array ranges, so a[i] becomes a[from] op ... op a[i].
+ *
+ * Works in two passes over the same tree of ranges: the up-sweep reduces each
+ * leaf and stores the partial result in the tree, then the down-sweep hands
+ * every leaf the combined result of everything to its left and scans it in
+ * place. Scans of int arrays are computed in long and written back as int.
+ *
+ * Double addition isn't associative, so for doubles the order matters. Leaves
+ * are reduced with the scalar kernel and scanned from the identity in the
+ * same order, then offset by the prefix. The prefix handed to a leaf is built
+ * by adding the totals of the leaves to its left one at a time, left to right,
+ * rather than combining whole subtrees. So the last element of a leaf is
+ * exactly the prefix handed to the next one, however deep the tree.
+ */
+public final class ParallelScan {
+
+	private ParallelScan() {
+	}
+
+	public static void scan(ForkJoinPool pool, int[] a, int from, int to,
+			LongOp op) {
+		ParallelReduce.checkRange(a.length, from, to);
+		IntUpSweep root = new IntUpSweep(a, from, to, op, ParallelReduce
+				.threshold(to - from, pool.getParallelism()));
+		pool.invoke(root);
+		pool.invoke(new IntDownSweep(root, op.identity()));
+	}
+
+	public static void scan(ForkJoinPool pool, long[] a, int from, int to,
+			LongOp op) {
+		ParallelReduce.checkRange(a.length, from, to);
+		LongUpSweep root = new LongUpSweep(a, from, to, op, ParallelReduce
+				.threshold(to - from, pool.getParallelism()));
+		pool.invoke(root);
+		pool.invoke(new LongDownSweep(root, op.identity()));
+	}
+
+	public static void scan(ForkJoinPool pool, double[] a, int from, int to,
+			DoubleOp op) {
+		ParallelReduce.checkRange(a.length, from, to);
+		DoubleUpSweep root = new DoubleUpSweep(a, from, to, op, ParallelReduce
+				.threshold(to - from, pool.getParallelism()));
+		pool.invoke(root);
+		pool.invoke(new DoubleDownSweep(root, op.identity()));
+	}
+
+	public static void scan(ForkJoinPool pool, int[] a, LongOp op) {
+		scan(pool, a, 0, a.length, op);
+	}
+
+	public static void scan(ForkJoinPool pool, long[] a, LongOp op) {
+		scan(pool, a, 0, a.length, op);
+	}
+
+	public static void scan(ForkJoinPool pool, double[] a, DoubleOp op) {
+		scan(pool, a, 0, a.length, op);
+	}
+
+	/** Replaces each element with the sum of it and everything before it. */
+	public static void cumulativeSum(ForkJoinPool pool, long[] a) {
+		scan(pool, a, LongOps.SUM);
+	}
+
+	public static void cumulativeSum(ForkJoinPool pool, double[] a) {
+		scan(pool, a, DoubleOps.SUM);
+	}
+
+	static class IntUpSweep extends RecursiveAction {
+		final int[] a;
+		final int from;
+		final int to;
+		final LongOp op;
+		final int threshold;
+		IntUpSweep left;
+		IntUpSweep right;
+		long reduced;
+
+		IntUpSweep(int[] a, int from, int to, LongOp op, int threshold) {
+			this.a = a;
+			this.from = from;
+			this.to = to;
+			this.op = op;
+			this.threshold = threshold;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from <= threshold) {
+				reduced = LeafKernel.get().reduce(op, a, from, to);
+				return;
+			}
+			final int mid = (from + to) >>> 1;
+			left = new IntUpSweep(a, from, mid, op, threshold);
+			right = new IntUpSweep(a, mid, to, op, threshold);
+			invokeAll(left, right);
+			reduced = op.combine(left.reduced, right.reduced);
+		}
+	}
+
+	static class IntDownSweep extends RecursiveAction {
+		final IntUpSweep node;
+		final long prefix;
+
+		IntDownSweep(IntUpSweep node, long prefix) {
+			this.node = node;
+			this.prefix = prefix;
+		}
+
+		@Override
+		protected void compute() {
+			if (node.left == null) {
+				final int[] a = node.a;
+				final LongOp op = node.op;
+				long acc = prefix;
+				for (int i = node.from; i < node.to; i++) {
+					acc = op.apply(acc, a[i]);
+					a[i] = (int) acc;
+				}
+				return;
+			}
+			invokeAll(new IntDownSweep(node.left, prefix), new IntDownSweep(
+					node.right, node.op.combine(prefix, node.left.reduced)));
+		}
+	}
+
+	static class LongUpSweep extends RecursiveAction {
+		final long[] a;
+		final int from;
+		final int to;
+		final LongOp op;
+		final int threshold;
+		LongUpSweep left;
+		LongUpSweep right;
+		long reduced;
+
+		LongUpSweep(long[] a, int from, int to, LongOp op, int threshold) {
+			this.a = a;
+			this.from = from;
+			this.to = to;
+			this.op = op;
+			this.threshold = threshold;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from <= threshold) {
+				reduced = LeafKernel.get().reduce(op, a, from, to);
+				return;
+			}
+			final int mid = (from + to) >>> 1;
+			left = new LongUpSweep(a, from, mid, op, threshold);
+			right = new LongUpSweep(a, mid, to, op, threshold);
+			invokeAll(left, right);
+			reduced = op.combine(left.reduced, right.reduced);
+		}
+	}
+
+	static class LongDownSweep extends RecursiveAction {
+		final LongUpSweep node;
+		final long prefix;
+
+		LongDownSweep(LongUpSweep node, long prefix) {
+			this.node = node;
+			this.prefix = prefix;
+		}
+
+		@Override
+		protected void compute() {
+			if (node.left == null) {
+				final long[] a = node.a;
+				final LongOp op = node.op;
+				long acc = prefix;
+				for (int i = node.from; i < node.to; i++) {
+					acc = op.apply(acc, a[i]);
+					a[i] = acc;
+				}
+				return;
+			}
+			invokeAll(new LongDownSweep(node.left, prefix), new LongDownSweep(
+					node.right, node.op.combine(prefix, node.left.reduced)));
+		}
+	}
+
+	static class DoubleUpSweep extends RecursiveAction {
+		final double[] a;
+		final int from;
+		final int to;
+		final DoubleOp op;
+		final int threshold;
+		DoubleUpSweep left;
+		DoubleUpSweep right;
+		double reduced;
+
+		DoubleUpSweep(double[] a, int from, int to, DoubleOp op, int threshold) {
+			this.a = a;
+			this.from = from;
+			this.to = to;
+			this.op = op;
+			this.threshold = threshold;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from <= threshold) {
+				reduced = LeafKernel.SCALAR.reduce(op, a, from, to);
+				return;
+			}
+			final int mid = (from + to) >>> 1;
+			left = new DoubleUpSweep(a, from, mid, op, threshold);
+			right = new DoubleUpSweep(a, mid, to, op, threshold);
+			invokeAll(left, right);
+			reduced = op.combine(left.reduced, right.reduced);
+		}
+	}
+
+	static class DoubleDownSweep extends RecursiveAction {
+		final DoubleUpSweep node;
+		final double prefix;
+
+		DoubleDownSweep(DoubleUpSweep node, double prefix) {
+			this.node = node;
+			this.prefix = prefix;
+		}
+
+		@Override
+		protected void compute() {
+			if (node.left == null) {
+				final double[] a = node.a;
+				final DoubleOp op = node.op;
+				double acc = op.identity();
+				for (int i = node.from; i < node.to; i++) {
+					acc = op.apply(acc, a[i]);
+					a[i] = op.combine(prefix, acc);
+				}
+				return;
+			}
+			invokeAll(new DoubleDownSweep(node.left, prefix),
+					new DoubleDownSweep(node.right, after(node.left, prefix)));
+		}
+
+		// what the last element of the node's range will be
+		static double after(DoubleUpSweep node, double prefix) {
+			if (node.left == null) {
+				return node.op.combine(prefix, node.reduced);
+			}
+			return after(node.right, after(node.left, prefix));
+		}
+	}
+}
@@ -4,16 +4,27 @@ import java.util.concurrent.RecursiveTask;
 
 class SumCalculatorTask extends RecursiveTask<Integer>{
 	int [] numbers;
+	ForkJoinStats stats; // optional
+	int depth;
 	SumCalculatorTask(int[] numbers){
 		this.numbers = numbers;
 	}
+	SumCalculatorTask(int[] numbers, ForkJoinStats stats, int depth){
+		this.numbers = numbers;
+		this.stats = stats;
+		this.depth = depth;
+	}
 	
 	@Override
 	protected Integer compute() {
+		long start = stats == null ? 0 : System.nanoTime();
 		int sum = 0;
 		for (int i : numbers){
 			sum += i;
 		}
+		if (stats != null) {
+			stats.leaf(depth, numbers.length, System.nanoTime() - start);
+		}
 		return sum;
 	}
 }
@@ -0,0 +1,103 @@
+/*
+ * Copyright 2014 Adam L. Davis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.adamldavis.java.lazy;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Starts every download at once without blocking and hands back a
+ * CompletableFuture per URL, so callers can start parsing each page as soon as
+ * it arrives instead of waiting for the slowest one. A failed download
+ * completes its future with a {@link FetchException}. The fetcher's https
+ * engine is also this Downloader's engine, for fetch and fetchOrThrow.
+ *
+ * @author Adam L. Davis
+ */
+public class AsyncDownloader extends Downloader implements Closeable {
+
+	private final AsyncFetcher fetcher;
+	private final boolean ownsFetcher;
+
+	public AsyncDownloader() throws IOException {
+		this(new AsyncFetcher(), true);
+	}
+
+	/** @param fetcher left open by close, whoever made it closes it. */
+	public AsyncDownloader(AsyncFetcher fetcher) {
+		this(fetcher, false);
+	}
+
+	private AsyncDownloader(AsyncFetcher fetcher, boolean ownsFetcher) {
+		super(fetcher.getTlsEngine());
+		this.fetcher = fetcher;
+		this.ownsFetcher = ownsFetcher;
+	}
+
+	@Override
+	public void download() {
+		final Map<String, CompletableFuture<String>> results = downloadAsync();
+		final CompletableFuture<?>[] handled = new CompletableFuture<?>[results
+				.size()];
+		int i = 0;
+		for (CompletableFuture<String> result : results.values()) {
+			handled[i++] = result.handle((body, e) -> {
+				if (e != null) {
+					e.getCause().printStackTrace();
+				}
+				return body;
+			});
+		}
+		CompletableFuture.allOf(handled).join();
+	}
+
+	/** @return each URL's future body, in the same order as urls. */
+	public Map<String, CompletableFuture<String>> downloadAsync() {
+		final Map<String, CompletableFuture<String>> results = new LinkedHashMap<>();
+		for (String url : urls) {
+			results.put(url, fetchAsync(url));
+		}
+		return results;
+	}
+
+	public CompletableFuture<String> fetchAsync(final String url) {
+		return fetcher.fetch(url).thenApply(response -> {
+			if (response.status >= 400) {
+				throw new CompletionException(FetchException.httpStatus(url,
+						response.status));
+			}
+			// decoded like the blocking fetch, so both return the same text
+			return new String(response.body, TextSink.charsetOf(response
+					.header("content-type"), StandardCharsets.UTF_8));
+		});
+	}
+
+	public AsyncFetcher getFetcher() {
+		return fetcher;
+	}
+
+	/** Closes the fetcher if this made it. */
+	public void close() {
+		if (ownsFetcher) {
+			fetcher.close();
+		}
+	}
+}
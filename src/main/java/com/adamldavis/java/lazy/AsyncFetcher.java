@@ -0,0 +1,422 @@
+/*
+ * Copyright 2014 Adam L. Davis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.adamldavis.java.lazy;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.InetSocketAddress;
+import java.net.MalformedURLException;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousChannelGroup;
+import java.nio.channels.AsynchronousSocketChannel;
+import java.nio.channels.CompletionHandler;
+import java.nio.channels.InterruptedByTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Non-blocking HTTP GETs that return CompletableFutures. Plain http requests
+ * run on AsynchronousSocketChannels, so the few threads of the channel group
+ * only do work when bytes arrive and can drive hundreds of requests at once.
+ * Failures complete the future with a {@link FetchException}.
+ *
+ * Each request is HTTP/1.0 on its own connection, so responses are never
+ * chunked. The two things the JDK can only do blocking run on a small pool
+ * instead of the caller's thread: looking up the host name, and https
+ * requests (there is no TLS for asynchronous channels), which are handed to a
+ * blocking {@link FetchEngine}.
+ *
+ * @author Adam L. Davis
+ */
+public class AsyncFetcher implements Closeable {
+
+	private final AsynchronousChannelGroup group;
+	private final ScheduledExecutorService timer;
+	private final ExecutorService blockingExecutor;
+	private final FetchEngine tlsEngine;
+	private final int connectTimeoutMillis;
+	private final int readTimeoutMillis;
+	private final AtomicInteger inFlight = new AtomicInteger();
+
+	public AsyncFetcher() throws IOException {
+		this(2, 10000, 30000);
+	}
+
+	public AsyncFetcher(int threads, int connectTimeoutMillis,
+			int readTimeoutMillis) throws IOException {
+		this(threads, new FetchEngine(new HttpConnectionPool(),
+				connectTimeoutMillis, readTimeoutMillis), connectTimeoutMillis,
+				readTimeoutMillis);
+	}
+
+	/** @param tlsEngine used for https requests, and closed with this. */
+	public AsyncFetcher(int threads, FetchEngine tlsEngine,
+			int connectTimeoutMillis, int readTimeoutMillis) throws IOException {
+		this.group = AsynchronousChannelGroup.withFixedThreadPool(threads,
+				daemonThreads("async-fetch"));
+		this.timer = Executors
+				.newSingleThreadScheduledExecutor(daemonThreads("async-fetch-timer"));
+		this.blockingExecutor = Executors.newFixedThreadPool(threads * 4,
+				daemonThreads("async-fetch-blocking"));
+		this.tlsEngine = tlsEngine;
+		this.connectTimeoutMillis = connectTimeoutMillis;
+		this.readTimeoutMillis = readTimeoutMillis;
+	}
+
+	/** Starts the request and returns right away. Follows redirects. */
+	public CompletableFuture<HttpResponse> fetch(String url) {
+		try {
+			return fetch(new URL(url), 0);
+		} catch (MalformedURLException e) {
+			return failed(new FetchException(FetchException.Kind.INVALID_URL,
+					url, e));
+		}
+	}
+
+	/** Number of requests started but not finished yet. */
+	public int getInFlight() {
+		return inFlight.get();
+	}
+
+	/** The blocking engine for https requests. */
+	public FetchEngine getTlsEngine() {
+		return tlsEngine;
+	}
+
+	public void close() {
+		try {
+			group.shutdownNow();
+		} catch (IOException e) {
+			// closing anyway
+		}
+		timer.shutdownNow();
+		blockingExecutor.shutdownNow();
+		tlsEngine.close();
+	}
+
+	private CompletableFuture<HttpResponse> fetch(final URL url,
+			final int redirects) {
+		final CompletableFuture<HttpResponse> response;
+		switch (url.getProtocol()) {
+		case "http":
+			response = new Exchange(url).start();
+			break;
+		case "https":
+			response = fetchBlocking(url);
+			break;
+		default:
+			return failed(new FetchException(FetchException.Kind.INVALID_URL,
+					url.toString(), "not an HTTP URL"));
+		}
+		return response.thenCompose(r -> {
+			final String location = r.header("location");
+			if (!FetchEngine.isRedirect(r.status) || location == null
+					|| redirects == FetchEngine.MAX_REDIRECTS) {
+				return CompletableFuture.completedFuture(r);
+			}
+			try {
+				return fetch(new URL(r.url, location), redirects + 1);
+			} catch (MalformedURLException e) {
+				return failed(new FetchException(
+						FetchException.Kind.INVALID_URL, location, e));
+			}
+		});
+	}
+
+	private CompletableFuture<HttpResponse> fetchBlocking(final URL url) {
+		try {
+			return CompletableFuture.supplyAsync(() -> {
+				try {
+					return tlsEngine.get(url.toString());
+				} catch (IOException e) {
+					throw new CompletionException(typed(url.toString(), e));
+				}
+			}, blockingExecutor);
+		} catch (RejectedExecutionException e) {
+			return failed(new FetchException(FetchException.Kind.IO,
+					url.toString(), "closed"));
+		}
+	}
+
+	// keeps the kind of failure a blocking fetch had
+	static FetchException typed(String url, IOException e) {
+		if (e instanceof FetchException) {
+			return (FetchException) e;
+		}
+		final FetchException.Kind kind;
+		if (e instanceof SocketTimeoutException) {
+			kind = FetchException.Kind.TIMEOUT;
+		} else if (e instanceof ConnectException
+				|| e instanceof UnknownHostException) {
+			kind = FetchException.Kind.CONNECT;
+		} else if (e instanceof MalformedURLException) {
+			kind = FetchException.Kind.INVALID_URL;
+		} else {
+			kind = FetchException.Kind.IO;
+		}
+		return new FetchException(kind, url, e);
+	}
+
+	static <T> CompletableFuture<T> failed(Throwable e) {
+		final CompletableFuture<T> future = new CompletableFuture<>();
+		future.completeExceptionally(e);
+		return future;
+	}
+
+	private static ThreadFactory daemonThreads(final String name) {
+		final AtomicInteger count = new AtomicInteger();
+		return r -> {
+			Thread thread = new Thread(r, name + "-" + count.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		};
+	}
+
+	/** One request/response on one channel, driven by completion handlers. */
+	private final class Exchange {
+		final URL url;
+		final CompletableFuture<HttpResponse> result = new CompletableFuture<>();
+		final ByteBuffer buffer = ByteBuffer.allocate(16 * 1024);
+		volatile AsynchronousSocketChannel channel;
+		volatile boolean timedOut;
+
+		byte[] received = new byte[16 * 1024];
+		int size;
+		int headerEnd = -1;
+		HttpResponse head;
+		long contentLength = -1;
+
+		Exchange(URL url) {
+			this.url = url;
+		}
+
+		CompletableFuture<HttpResponse> start() {
+			inFlight.incrementAndGet();
+			result.whenComplete((r, e) -> {
+				inFlight.decrementAndGet();
+				closeChannel();
+			});
+			final int port = url.getPort() < 0 ? url.getDefaultPort() : url
+					.getPort();
+			try {
+				// the name lookup blocks, so not on the caller's thread
+				blockingExecutor.execute(() -> connect(new InetSocketAddress(
+						url.getHost(), port)));
+			} catch (RejectedExecutionException e) {
+				fail(FetchException.Kind.IO, "closed", null);
+			}
+			return result;
+		}
+
+		void connect(InetSocketAddress address) {
+			if (address.isUnresolved()) {
+				fail(FetchException.Kind.CONNECT, "unknown host", null);
+				return;
+			}
+			try {
+				channel = AsynchronousSocketChannel.open(group);
+				if (result.isDone()) { // failed meanwhile
+					closeChannel();
+					return;
+				}
+				final ScheduledFuture<?> connectTimeout = timer.schedule(() -> {
+					timedOut = true;
+					closeChannel();
+				}, connectTimeoutMillis, MILLISECONDS);
+
+				channel.connect(address, null,
+						new CompletionHandler<Void, Void>() {
+							public void completed(Void v, Void a) {
+								connectTimeout.cancel(false);
+								write(ByteBuffer.wrap(request()));
+							}
+
+							public void failed(Throwable e, Void a) {
+								connectTimeout.cancel(false);
+								fail(e);
+							}
+						});
+			} catch (IOException | RuntimeException e) {
+				fail(e);
+			}
+		}
+
+		byte[] request() {
+			final StringBuilder request = new StringBuilder(256);
+			request.append("GET ")
+					.append(url.getFile().isEmpty() ? "/" : url.getFile())
+					.append(" HTTP/1.0\r\nHost: ").append(url.getHost());
+			if (url.getPort() >= 0) {
+				request.append(':').append(url.getPort());
+			}
+			request.append("\r\nAccept: */*\r\nConnection: close\r\n\r\n");
+			return request.toString().getBytes(StandardCharsets.ISO_8859_1);
+		}
+
+		void write(final ByteBuffer request) {
+			channel.write(request, readTimeoutMillis, MILLISECONDS, null,
+					new CompletionHandler<Integer, Void>() {
+						public void completed(Integer n, Void a) {
+							if (request.hasRemaining()) {
+								write(request);
+							} else {
+								read();
+							}
+						}
+
+						public void failed(Throwable e, Void a) {
+							fail(e);
+						}
+					});
+		}
+
+		void read() {
+			buffer.clear();
+			channel.read(buffer, readTimeoutMillis, MILLISECONDS, null,
+					new CompletionHandler<Integer, Void>() {
+						public void completed(Integer n, Void a) {
+							if (n < 0) {
+								finish();
+								return;
+							}
+							append(buffer.array(), n);
+							try {
+								if (headerEnd < 0) {
+									parseHead(n);
+								}
+							} catch (IOException e) {
+								fail(e);
+								return;
+							}
+							if (head != null && contentLength >= 0
+									&& size - headerEnd >= contentLength) {
+								finish();
+							} else {
+								read();
+							}
+						}
+
+						public void failed(Throwable e, Void a) {
+							fail(e);
+						}
+					});
+		}
+
+		void append(byte[] bytes, int n) {
+			if (size + n > received.length) {
+				received = Arrays.copyOf(received, Math.max(size + n,
+						received.length * 2));
+			}
+			System.arraycopy(bytes, 0, received, size, n);
+			size += n;
+		}
+
+		// looks for the blank line after the headers and parses them
+		void parseHead(int justRead) throws IOException {
+			final int from = Math.max(0, size - justRead - 3);
+			for (int i = from; i + 3 < size; i++) {
+				if (received[i] == '\r' && received[i + 1] == '\n'
+						&& received[i + 2] == '\r' && received[i + 3] == '\n') {
+					headerEnd = i + 4;
+					break;
+				}
+			}
+			if (headerEnd < 0) {
+				return;
+			}
+			final ByteArrayInputStream in = new ByteArrayInputStream(received,
+					0, headerEnd);
+			final int status = FetchEngine.parseStatus(
+					BodyInputStream.readLine(in), url);
+			final Map<String, String> headers = FetchEngine.readHeaders(in);
+			head = new HttpResponse(url, status, headers, null);
+
+			final String length = head.header("content-length");
+			if (status == 204 || status == 304) {
+				contentLength = 0;
+			} else if (length != null) {
+				try {
+					contentLength = Long.parseLong(length.trim());
+				} catch (NumberFormatException e) {
+					throw new IOException("Bad Content-Length from " + url);
+				}
+			}
+		}
+
+		void finish() {
+			if (head == null) {
+				fail(FetchException.Kind.IO,
+						"connection closed before the response headers", null);
+				return;
+			}
+			final int available = size - headerEnd;
+			if (contentLength > available) {
+				fail(FetchException.Kind.IO, "connection closed after "
+						+ available + " of " + contentLength + " bytes", null);
+				return;
+			}
+			final int length = contentLength < 0 ? available
+					: (int) contentLength;
+			result.complete(head.withBody(Arrays.copyOfRange(received,
+					headerEnd, headerEnd + length)));
+		}
+
+		void fail(Throwable e) {
+			final FetchException.Kind kind;
+			if (timedOut || e instanceof InterruptedByTimeoutException) {
+				kind = FetchException.Kind.TIMEOUT;
+			} else if (e instanceof ConnectException) {
+				kind = FetchException.Kind.CONNECT;
+			} else {
+				kind = FetchException.Kind.IO;
+			}
+			result.completeExceptionally(new FetchException(kind, url
+					.toString(), e));
+		}
+
+		void fail(FetchException.Kind kind, String message, Throwable cause) {
+			result.completeExceptionally(new FetchException(kind, url
+					.toString(), 0, message, cause));
+		}
+
+		void closeChannel() {
+			try {
+				if (channel != null) {
+					channel.close();
+				}
+			} catch (IOException e) {
+				// already closing
+			}
+		}
+	}
+}
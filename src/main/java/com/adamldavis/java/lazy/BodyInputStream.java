@@ -0,0 +1,153 @@
+package com.adamldavis.java.lazy;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Reads exactly one response body off a pooled connection, whether it is
+ * sized by Content-Length, chunked, or runs until the server closes. Once the
+ * whole body has been read the connection goes back to the pool; closing it
+ * early closes the connection instead, since the rest of the body would still
+ * be in the way of the next response.
+ */
+class BodyInputStream extends InputStream {
+
+	static final int FIXED = 0;
+	static final int CHUNKED = 1;
+	static final int UNTIL_CLOSE = 2;
+
+	/** The response without its body. */
+	final HttpResponse head;
+
+	private final PooledConnection connection;
+	private final HttpConnectionPool pool;
+	private final InputStream in;
+	private final int mode;
+	private final boolean keepAlive;
+	private long remaining; // in the body or the current chunk
+	private boolean firstChunk = true;
+	private boolean done;
+	/** Body bytes read off the connection so far. */
+	long bytesRead;
+
+	BodyInputStream(HttpResponse head, PooledConnection connection,
+			HttpConnectionPool pool, int mode, long length, boolean keepAlive) {
+		this.head = head;
+		this.connection = connection;
+		this.pool = pool;
+		this.in = connection.in;
+		this.mode = mode;
+		this.remaining = mode == FIXED ? length : 0;
+		this.keepAlive = keepAlive && mode != UNTIL_CLOSE;
+		if (mode == FIXED && length == 0) {
+			finish();
+		}
+	}
+
+	@Override
+	public int read() throws IOException {
+		final byte[] one = new byte[1];
+		return read(one, 0, 1) < 0 ? -1 : one[0] & 0xFF;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		if (done) {
+			return -1;
+		}
+		if (len == 0) {
+			return 0;
+		}
+		if (mode == CHUNKED && remaining == 0 && !nextChunk()) {
+			return -1;
+		}
+		final int n = in.read(b, off,
+				mode == UNTIL_CLOSE ? len : (int) Math.min(len, remaining));
+		if (n < 0) {
+			if (mode == UNTIL_CLOSE) {
+				finish();
+				return -1;
+			}
+			throw new EOFException("Connection closed in the middle of "
+					+ head.url);
+		}
+		remaining -= n;
+		bytesRead += n;
+		if (mode == FIXED && remaining == 0) {
+			finish();
+		}
+		return n;
+	}
+
+	@Override
+	public int available() throws IOException {
+		return done ? 0 : (int) Math.min(in.available(),
+				mode == UNTIL_CLOSE ? Integer.MAX_VALUE : remaining);
+	}
+
+	@Override
+	public void close() {
+		if (!done) {
+			done = true;
+			pool.discard(connection);
+		}
+	}
+
+	/** @return false when the last chunk has been read. */
+	private boolean nextChunk() throws IOException {
+		if (!firstChunk) {
+			readLine(in); // the CRLF after the previous chunk's data
+		}
+		firstChunk = false;
+		final String line = readLine(in);
+		if (line == null) {
+			throw new EOFException("Connection closed in the middle of "
+					+ head.url);
+		}
+		final int semicolon = line.indexOf(';'); // skip chunk extensions
+		try {
+			remaining = Long.parseLong((semicolon < 0 ? line : line.substring(
+					0, semicolon)).trim(), 16);
+		} catch (NumberFormatException e) {
+			throw new IOException("Bad chunk size \"" + line + "\" from "
+					+ head.url);
+		}
+		if (remaining > 0) {
+			return true;
+		}
+		String trailer;
+		do {
+			trailer = readLine(in);
+		} while (trailer != null && !trailer.isEmpty());
+		finish();
+		return false;
+	}
+
+	private void finish() {
+		done = true;
+		if (keepAlive) {
+			pool.release(connection);
+		} else {
+			pool.discard(connection);
+		}
+	}
+
+	/** Reads an ISO-8859-1 line without its CRLF, or null at end of stream. */
+	static String readLine(InputStream in) throws IOException {
+		final ByteArrayOutputStream line = new ByteArrayOutputStream(64);
+		int b;
+		while ((b = in.read()) != '\n') {
+			if (b < 0) {
+				return line.size() == 0 ? null : line.toString("ISO-8859-1");
+			}
+			if (line.size() > 64 * 1024) {
+				throw new IOException("HTTP line too long");
+			}
+			line.write(b);
+		}
+		final String s = line.toString("ISO-8859-1");
+		return s.endsWith("\r") ? s.substring(0, s.length() - 1) : s;
+	}
+}
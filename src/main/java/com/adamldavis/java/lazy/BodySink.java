@@ -0,0 +1,67 @@
+/*
+ * Copyright 2014 Adam L. Davis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.adamldavis.java.lazy;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+
+/**
+ * Receives a response body piece by piece instead of as one byte[], so a
+ * download needs the same memory whatever the size of the page. See
+ * {@link FetchEngine#stream(String, BodySink)}.
+ *
+ * @param <T>
+ *            what the sink makes of the body.
+ * @author Adam L. Davis
+ */
+public interface BodySink<T> {
+
+	/** Called once with the status and headers, before any of the body. */
+	void begin(HttpResponse head) throws IOException;
+
+	/**
+	 * Consumes all the bytes between the buffer's position and limit. The
+	 * buffer is reused afterwards, so don't keep it.
+	 */
+	void write(ByteBuffer data) throws IOException;
+
+	/** Called once after the whole body was written. */
+	T end() throws IOException;
+
+	/** Called instead of end() when the download fails part way through. */
+	default void abort() {
+	}
+
+	/**
+	 * Moves the whole body into the sink. By default it reads through one
+	 * pooled buffer and calls {@link #write(ByteBuffer)}; sinks with a faster
+	 * path to their destination can override this.
+	 */
+	default void transfer(ReadableByteChannel body, BufferPool buffers)
+			throws IOException {
+		final ByteBuffer buffer = buffers.acquire();
+		try {
+			while (body.read(buffer) >= 0) {
+				buffer.flip();
+				write(buffer);
+				buffer.clear();
+			}
+		} finally {
+			buffers.release(buffer);
+		}
+	}
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright 2014 Adam L. Davis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.adamldavis.java.lazy;
+
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Direct ByteBuffers of one size that are handed back after each download
+ * instead of being garbage. Direct buffers are slow to allocate but can be
+ * written to a FileChannel without another copy. Keeps at most maxPooled idle
+ * buffers; any extra ones are left to the garbage collector. Thread-safe.
+ *
+ * @author Adam L. Davis
+ */
+public class BufferPool {
+
+	private final int bufferSize;
+	private final int maxPooled;
+	private final Queue<ByteBuffer> pooled = new ConcurrentLinkedQueue<>();
+	private final AtomicInteger size = new AtomicInteger();
+	private final AtomicLong allocated = new AtomicLong();
+
+	public BufferPool() {
+		this(16 * 1024, 64);
+	}
+
+	public BufferPool(int bufferSize, int maxPooled) {
+		this.bufferSize = bufferSize;
+		this.maxPooled = maxPooled;
+	}
+
+	/** @return a cleared buffer, pooled if there is one. */
+	public ByteBuffer acquire() {
+		final ByteBuffer buffer = pooled.poll();
+		if (buffer != null) {
+			size.decrementAndGet();
+			return buffer;
+		}
+		allocated.incrementAndGet();
+		return ByteBuffer.allocateDirect(bufferSize);
+	}
+
+	public void release(ByteBuffer buffer) {
+		if (buffer.capacity() != bufferSize || !buffer.isDirect()) {
+			throw new IllegalArgumentException("Not from this pool");
+		}
+		if (size.incrementAndGet() > maxPooled) {
+			size.decrementAndGet();
+			return;
+		}
+		buffer.clear();
+		pooled.offer(buffer);
+	}
+
+	public int getBufferSize() {
+		return bufferSize;
+	}
+
+	/** Number of buffers ever allocated, which stays flat once warmed up. */
+	public long getAllocated() {
+		return allocated.get();
+	}
+
+	public int getPooled() {
+		return size.get();
+	}
+
+	@Override
+	public String toString() {
+		return "allocated " + getAllocated() + ", pooled " + getPooled();
+	}
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright 2014 Adam L. Davis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.adamldavis.java.lazy;
+
+/**
+ * Times Downloader strategies fairly: each one downloads the same urls, first
+ * a few warmup times that aren't counted (so the JIT, the connection pools
+ * and any caches settle) and then a number of measured times, each timed
+ * with System.nanoTime into a {@link LatencyHistogram}.
+ *
+ * @author Adam L. Davis
+ */
+public class DownloadBenchmark {
+
+	private final String[] urls;
+	private final int warmups;
+	private final int iterations;
+
+	public DownloadBenchmark(String[] urls, int warmups, int iterations) {
+		this.urls = urls;
+		this.warmups = warmups;
+		this.iterations = iterations;
+	}
+
+	public Result run(String name, Downloader downloader) {
+		downloader.urls = urls;
+		for (int i = 0; i < warmups; i++) {
+			downloader.download();
+		}
+		final LatencyHistogram histogram = new LatencyHistogram();
+		for (int i = 0; i < iterations; i++) {
+			final long start = System.nanoTime();
+			downloader.download();
+			histogram.record(System.nanoTime() - start);
+		}
+		return new Result(name, downloader, histogram);
+	}
+
+	/** How long each download of all the urls took. */
+	public static class Result {
+		public final String name;
+		public final Downloader downloader;
+		public final LatencyHistogram histogram;
+
+		Result(String name, Downloader downloader, LatencyHistogram histogram) {
+			this.name = name;
+			this.downloader = downloader;
+			this.histogram = histogram;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("%-16s %s", name, histogram);
+		}
+	}
+}
@@ -0,0 +1,469 @@
+/*
+ * Copyright 2014 Adam L. Davis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.adamldavis.java.lazy;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Runs fetches on a fixed set of worker threads with at most maxPerHost at a
+ * time against any one host, so a big batch for one site can't starve the
+ * others or get us blocked. Each host has its own priority queue; a free
+ * worker takes the highest priority request whose host is under its cap.
+ *
+ * Failures worth retrying (connection problems, timeouts, 5xx, 408 and 429)
+ * are retried up to maxAttempts times with exponential backoff plus jitter.
+ * Every request has a deadline, and a batch can have one for all of its
+ * requests; when it passes the request fails with a TIMEOUT
+ * {@link FetchException} whether it was still queued, waiting to retry or
+ * running. A fetch that is already on the wire keeps its worker (and host
+ * slot) until the engine's own read timeout, since blocking sockets can't be
+ * interrupted.
+ *
+ * @author Adam L. Davis
+ */
+public class DownloadScheduler implements Closeable {
+
+	public static final int DEFAULT_PRIORITY = 0;
+
+	private static final long MAX_BACKOFF_MILLIS = 30000;
+
+	private final Downloader downloader;
+	private final int maxPerHost;
+	private final int maxAttempts;
+	private final long baseBackoffMillis;
+
+	private final ReentrantLock lock = new ReentrantLock();
+	private final Condition ready = lock.newCondition();
+	private final Map<String, Host> hosts = new LinkedHashMap<>();
+	private final Set<Task> backingOff = new HashSet<>();
+	private final ScheduledExecutorService timer;
+	private long sequence;
+	private boolean closed;
+
+	/** 16 workers, 2 per host, 3 attempts starting at 200ms apart. */
+	public DownloadScheduler(Downloader downloader) {
+		this(downloader, 16, 2, 3, 200);
+	}
+
+	/**
+	 * @param downloader
+	 *            does the actual fetching, with its cache and coalescer if it
+	 *            has them.
+	 * @param baseBackoffMillis
+	 *            the wait before the first retry; it doubles for each retry
+	 *            after that.
+	 */
+	public DownloadScheduler(Downloader downloader, int threads,
+			int maxPerHost, int maxAttempts, long baseBackoffMillis) {
+		this.downloader = downloader;
+		this.maxPerHost = maxPerHost;
+		this.maxAttempts = maxAttempts;
+		this.baseBackoffMillis = baseBackoffMillis;
+		this.timer = Executors.newSingleThreadScheduledExecutor(r -> {
+			final Thread thread = new Thread(r, "download-timer");
+			thread.setDaemon(true);
+			return thread;
+		});
+		for (int i = 0; i < threads; i++) {
+			final Thread worker = new Thread(this::work, "download-worker-"
+					+ (i + 1));
+			worker.setDaemon(true);
+			worker.start();
+		}
+	}
+
+	/**
+	 * Queues a fetch. Higher priorities run first.
+	 *
+	 * @return the body, or a {@link FetchException} (or IOException) failure.
+	 */
+	public CompletableFuture<String> submit(String url, int priority,
+			long timeoutMillis) {
+		final Task task = new Task(url, priority, System.currentTimeMillis()
+				+ timeoutMillis);
+		final String host;
+		try {
+			host = new URL(url).getHost().toLowerCase();
+		} catch (MalformedURLException e) {
+			task.result.completeExceptionally(new FetchException(
+					FetchException.Kind.INVALID_URL, url, e));
+			return task.result;
+		}
+		lock.lock();
+		try {
+			if (closed) {
+				task.result.completeExceptionally(new FetchException(
+						FetchException.Kind.IO, url, "scheduler closed"));
+				return task.result;
+			}
+			task.host = host(host);
+			task.sequence = sequence++;
+			task.host.queue.add(task);
+			ready.signal();
+		} finally {
+			lock.unlock();
+		}
+		try {
+			final ScheduledFuture<?> deadline = timer.schedule(task::expire,
+					timeoutMillis, MILLISECONDS);
+			task.result.whenComplete((body, e) -> deadline.cancel(false));
+		} catch (RejectedExecutionException e) {
+			// closed just now, which failed the task
+		}
+		return task.result;
+	}
+
+	/**
+	 * Queues all the URLs at one priority. Each request gets
+	 * requestTimeoutMillis, but none of them runs past batchTimeoutMillis
+	 * from now.
+	 *
+	 * @return each URL's future body, in the same order as urls.
+	 */
+	public Map<String, CompletableFuture<String>> submitBatch(String[] urls,
+			int priority, long requestTimeoutMillis, long batchTimeoutMillis) {
+		final long batchDeadline = System.currentTimeMillis()
+				+ batchTimeoutMillis;
+		final Map<String, CompletableFuture<String>> results = new LinkedHashMap<>();
+		for (String url : urls) {
+			final long left = batchDeadline - System.currentTimeMillis();
+			results.put(url, submit(url, priority,
+					Math.min(requestTimeoutMillis, left)));
+		}
+		return results;
+	}
+
+	/** A snapshot of every host seen so far, by host name. */
+	public Map<String, HostStats> getHostStats() {
+		lock.lock();
+		try {
+			final Map<String, HostStats> stats = new TreeMap<>();
+			for (Host host : hosts.values()) {
+				stats.put(host.name, host.snapshot());
+			}
+			return stats;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/** Fails everything queued and stops the workers. */
+	public void close() {
+		final List<Task> queued = new ArrayList<>();
+		lock.lock();
+		try {
+			closed = true;
+			for (Host host : hosts.values()) {
+				queued.addAll(host.queue);
+				host.queue.clear();
+			}
+			queued.addAll(backingOff);
+			backingOff.clear();
+			ready.signalAll();
+		} finally {
+			lock.unlock();
+		}
+		for (Task task : queued) {
+			task.result.completeExceptionally(new FetchException(
+					FetchException.Kind.IO, task.url, "scheduler closed"));
+		}
+		timer.shutdownNow();
+	}
+
+	private Host host(String name) {
+		Host host = hosts.get(name);
+		if (host == null) {
+			host = new Host(name);
+			hosts.put(name, host);
+		}
+		return host;
+	}
+
+	private void work() {
+		for (;;) {
+			final Task task;
+			lock.lock();
+			try {
+				Task next;
+				while ((next = next()) == null) {
+					if (closed) {
+						return;
+					}
+					ready.awaitUninterruptibly();
+				}
+				task = next;
+			} finally {
+				lock.unlock();
+			}
+			run(task);
+		}
+	}
+
+	// the best waiting task of any host that has a free slot, with lock held
+	private Task next() {
+		Task best = null;
+		for (Host host : hosts.values()) {
+			if (host.active >= maxPerHost) {
+				continue;
+			}
+			Task head;
+			while ((head = host.queue.peek()) != null && head.result.isDone()) {
+				host.queue.poll(); // expired while waiting
+			}
+			if (head != null && (best == null || head.compareTo(best) < 0)) {
+				best = head;
+			}
+		}
+		if (best != null) {
+			best.host.queue.poll();
+			best.host.active++;
+		}
+		return best;
+	}
+
+	private void run(Task task) {
+		if (task.result.isDone()) { // timed out just before it was taken
+			release(task);
+			return;
+		}
+		final long start = System.nanoTime();
+		Exception failure = null;
+		String body = null;
+		try {
+			task.attempts++;
+			body = downloader.fetchOrThrow(task.url);
+		} catch (IOException | RuntimeException e) {
+			failure = e;
+		}
+		final long nanos = System.nanoTime() - start;
+		long delay = -1;
+		lock.lock();
+		try {
+			task.host.active--;
+			task.host.record(nanos);
+			// the deadline passed during the fetch and expire counted it
+			if (task.result.isDone()) {
+				ready.signal();
+				return;
+			}
+			if (failure == null) {
+				task.host.completed++;
+			} else {
+				if (!closed && failure instanceof IOException
+						&& isRetryable((IOException) failure)
+						&& task.attempts < maxAttempts) {
+					delay = backoffMillis(task.attempts);
+					if (System.currentTimeMillis() + delay >= task.deadline) {
+						delay = -1; // it would time out before the retry
+					}
+				}
+				if (delay >= 0) {
+					task.host.retries++;
+					backingOff.add(task);
+				} else {
+					task.host.failed++;
+				}
+			}
+			// counted now, so a deadline passing before it's completed
+			// below mustn't count it again
+			task.settled = delay < 0;
+			ready.signal();
+		} finally {
+			lock.unlock();
+		}
+		if (failure == null) {
+			task.result.complete(body);
+		} else if (delay < 0) {
+			task.result.completeExceptionally(failure);
+		} else {
+			try {
+				timer.schedule(() -> requeue(task), delay, MILLISECONDS);
+			} catch (RejectedExecutionException e) {
+				task.result.completeExceptionally(failure);
+			}
+		}
+	}
+
+	private void release(Task task) {
+		lock.lock();
+		try {
+			task.host.active--;
+			ready.signal();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private void requeue(Task task) {
+		lock.lock();
+		try {
+			if (backingOff.remove(task) && !task.result.isDone()) {
+				task.host.queue.add(task);
+				ready.signal();
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/** Half the exponential delay plus a random part of the other half. */
+	long backoffMillis(int attempts) {
+		final long exponential = Math.min(MAX_BACKOFF_MILLIS,
+				baseBackoffMillis << Math.min(attempts - 1, 20));
+		final long half = exponential / 2;
+		return half + ThreadLocalRandom.current().nextLong(half + 1);
+	}
+
+	static boolean isRetryable(IOException e) {
+		if (e instanceof MalformedURLException) {
+			return false;
+		}
+		if (!(e instanceof FetchException)) {
+			return true; // connection problems and timeouts
+		}
+		final FetchException fetch = (FetchException) e;
+		switch (fetch.kind) {
+		case INVALID_URL:
+			return false;
+		case HTTP_STATUS:
+			return fetch.status >= 500 || fetch.status == 408
+					|| fetch.status == 429;
+		default:
+			return true;
+		}
+	}
+
+	/** Queue depth, outcomes and fetch latency of one host. */
+	public static final class HostStats {
+		public final String host;
+		public final int queued;
+		public final int active;
+		public final long completed;
+		public final long failed;
+		public final long retries;
+		public final long timedOut;
+		public final long attempts;
+		public final double averageMillis;
+		public final double maxMillis;
+
+		HostStats(Host h) {
+			host = h.name;
+			queued = h.queue.size();
+			active = h.active;
+			completed = h.completed;
+			failed = h.failed;
+			retries = h.retries;
+			timedOut = h.timedOut;
+			attempts = h.attempts;
+			averageMillis = h.attempts == 0 ? 0 : h.totalNanos / 1e6
+					/ h.attempts;
+			maxMillis = h.maxNanos / 1e6;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("%s: queued %d, active %d, completed %d, "
+					+ "failed %d, retries %d, timed out %d, "
+					+ "avg %.1fms, max %.1fms", host, queued, active,
+					completed, failed, retries, timedOut, averageMillis,
+					maxMillis);
+		}
+	}
+
+	// guarded by lock
+	private static final class Host {
+		final String name;
+		final PriorityQueue<Task> queue = new PriorityQueue<>();
+		int active;
+		long completed, failed, retries, timedOut, attempts;
+		long totalNanos, maxNanos;
+
+		Host(String name) {
+			this.name = name;
+		}
+
+		void record(long nanos) {
+			attempts++;
+			totalNanos += nanos;
+			maxNanos = Math.max(maxNanos, nanos);
+		}
+
+		HostStats snapshot() {
+			return new HostStats(this);
+		}
+	}
+
+	private final class Task implements Comparable<Task> {
+		final String url;
+		final int priority;
+		final long deadline;
+		final CompletableFuture<String> result = new CompletableFuture<>();
+		Host host;
+		long sequence;
+		int attempts; // only touched by the worker running it
+		boolean settled; // counted as completed or failed, guarded by lock
+
+		Task(String url, int priority, long deadline) {
+			this.url = url;
+			this.priority = priority;
+			this.deadline = deadline;
+		}
+
+		// higher priority first, then first come first served
+		public int compareTo(Task other) {
+			if (priority != other.priority) {
+				return priority > other.priority ? -1 : 1;
+			}
+			return Long.compare(sequence, other.sequence);
+		}
+
+		void expire() {
+			lock.lock(); // so the stats are right when the caller sees it
+			try {
+				if (!settled && result.completeExceptionally(new FetchException(
+						FetchException.Kind.TIMEOUT, url,
+						"deadline passed after " + attempts + " attempts"))) {
+					host.queue.remove(this);
+					backingOff.remove(this);
+					host.timedOut++;
+				}
+			} finally {
+				lock.unlock();
+			}
+		}
+	}
+}
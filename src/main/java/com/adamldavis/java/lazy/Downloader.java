@@ -15,11 +15,8 @@
  */
 package com.adamldavis.java.lazy;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
-import java.net.URL;
+import java.nio.charset.StandardCharsets;
 
 /**
  * @author Adam L. Davis
@@ -30,35 +27,83 @@ public abstract class Downloader {
 	public String[] urls = { "http://xkcd.com/",
 			"http://www.reddit.com/", "http://www.adamldavis.com/",
 			"http://www.coderbiz.com/", "http://www.yahoo.com/" };
+
+	// keeps connections to each host open between downloads
+	protected final FetchEngine engine;
+
+	// null unless setCache was called
+	private volatile HttpCache cache;
+	// null unless setCoalescer was called
+	private volatile SingleFlight<String, String> coalescer;
 	
+	public Downloader() {
+		this(new FetchEngine());
+	}
+
+	protected Downloader(FetchEngine engine) {
+		this.engine = engine;
+	}
+
 	public abstract void download();
 
 	public String fetch(String urlString) {
-		System.out.println("Downloading..." + urlString);
-		Object content = null;
 		try {
-			final URL url = new URL(urlString);
-			content = url.openConnection().getContent();
+			return fetchOrThrow(urlString);
 		} catch (IOException e) {
 			e.printStackTrace();
 		}
+		return null;
+	}
 
-		if (content instanceof String) {
-			return (String) content;
-		} else if (content instanceof InputStream) {
-			try (InputStream input = (InputStream) content;
-					OutputStream out = new ByteArrayOutputStream();) {
-				int n = 0;
-				byte[] arr = new byte[1024];
-
-				while (-1 != (n = input.read(arr)))
-					out.write(arr, 0, n);
-
-				return out.toString();
-			} catch (IOException e) {
-				e.printStackTrace();
-			}
+	// same as fetch but lets the caller decide what a failure means
+	public String fetchOrThrow(final String urlString) throws IOException {
+		final SingleFlight<String, String> coalescer = this.coalescer;
+		if (coalescer == null) {
+			return load(urlString);
 		}
-		return null;
+		return coalescer.execute(urlString, () -> load(urlString));
+	}
+
+	private String load(String urlString) throws IOException {
+		final HttpCache cache = this.cache;
+		if (cache == null) {
+			return fetch(urlString, new TextSink());
+		}
+		final HttpResponse response = cache.get(engine, urlString);
+		if (response.status >= 400) {
+			throw FetchException.httpStatus(urlString, response.status);
+		}
+		return new String(response.body, TextSink.charsetOf(
+				response.header("content-type"), StandardCharsets.UTF_8));
+	}
+
+	// streams the body into the sink, e.g. a FileSink to save the page
+	public <T> T fetch(String urlString, BodySink<T> sink) throws IOException {
+		return engine.stream(urlString, sink);
+	}
+
+	/** Makes fetch go through the cache, or not when it's null. */
+	public void setCache(HttpCache cache) {
+		this.cache = cache;
+	}
+
+	public HttpCache getCache() {
+		return cache;
+	}
+
+	/**
+	 * Makes concurrent fetches of the same URL share one download. The same
+	 * coalescer can be shared by several Downloaders.
+	 */
+	public void setCoalescer(SingleFlight<String, String> coalescer) {
+		this.coalescer = coalescer;
+	}
+
+	public SingleFlight<String, String> getCoalescer() {
+		return coalescer;
+	}
+
+	public FetchEngine getEngine() {
+		return engine;
 	}
 }
@@ -0,0 +1,392 @@
+/*
+ * Copyright 2014 Adam L. Davis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.adamldavis.java.lazy;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.nio.channels.Channels;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A small HTTP/1.1 GET client on top of {@link HttpConnectionPool}. Unlike
+ * URL.openConnection().getContent() it has explicit connect and read timeouts
+ * and reuses connections through its own pool, whose statistics can be
+ * checked. Follows up to {@value #MAX_REDIRECTS} redirects. Asks for gzip or
+ * deflate compression and decodes it while the body is read, so callers
+ * always see the plain body. Thread-safe.
+ *
+ * @author Adam L. Davis
+ */
+public class FetchEngine implements Closeable {
+
+	public static final int MAX_REDIRECTS = 5;
+
+	private final HttpConnectionPool pool;
+	private final BufferPool buffers = new BufferPool();
+	private final InflaterPool inflaters = new InflaterPool();
+	private final int connectTimeoutMillis;
+	private final int readTimeoutMillis;
+	private final AtomicLong requests = new AtomicLong();
+	private final AtomicLong bytesOnWire = new AtomicLong();
+	private final AtomicLong bytesDecoded = new AtomicLong();
+	private volatile boolean compression = true;
+	// the connection each thread is fetching on, so abort can close it
+	private final ConcurrentMap<Thread, PooledConnection> active =
+			new ConcurrentHashMap<>();
+
+	public FetchEngine() {
+		this(new HttpConnectionPool(), 10000, 30000);
+	}
+
+	public FetchEngine(HttpConnectionPool pool, int connectTimeoutMillis,
+			int readTimeoutMillis) {
+		this.pool = pool;
+		this.connectTimeoutMillis = connectTimeoutMillis;
+		this.readTimeoutMillis = readTimeoutMillis;
+	}
+
+	public HttpResponse get(String url) throws IOException {
+		return get(url, Collections.<String, String> emptyMap());
+	}
+
+	/** GETs the URL with extra request headers and reads the whole body. */
+	public HttpResponse get(String url, Map<String, String> headers)
+			throws IOException {
+		try (BodyInputStream body = open(url, headers);
+				InputStream in = decode(body)) {
+			try {
+				return decodedHead(body.head, in).withBody(readAll(in));
+			} finally {
+				count(body, in);
+			}
+		} finally {
+			active.remove(Thread.currentThread());
+		}
+	}
+
+	public <T> T stream(String url, BodySink<T> sink) throws IOException {
+		return stream(url, Collections.<String, String> emptyMap(), sink);
+	}
+
+	/**
+	 * GETs the URL and hands the body to the sink through pooled buffers, so
+	 * it is never held in memory all at once. Error statuses (400 and up)
+	 * throw a {@link FetchException} without calling the sink at all.
+	 */
+	public <T> T stream(String url, Map<String, String> headers,
+			BodySink<T> sink) throws IOException {
+		try (BodyInputStream body = open(url, headers);
+				InputStream in = decode(body)) {
+			if (body.head.status >= 400) {
+				throw FetchException.httpStatus(url, body.head.status);
+			}
+			sink.begin(decodedHead(body.head, in));
+			try {
+				sink.transfer(Channels.newChannel(in), buffers);
+				return sink.end();
+			} catch (IOException | RuntimeException e) {
+				sink.abort();
+				throw e;
+			} finally {
+				count(body, in);
+			}
+		} finally {
+			active.remove(Thread.currentThread());
+		}
+	}
+
+	/**
+	 * Closes the connection the thread is fetching on, if any, so a read
+	 * blocked on it fails right away instead of at the read timeout. Blocking
+	 * socket reads ignore interrupts, so this is how to cancel a fetch.
+	 *
+	 * @return true if there was a connection to close.
+	 */
+	public boolean abort(Thread thread) {
+		final PooledConnection connection = active.remove(thread);
+		if (connection == null) {
+			return false;
+		}
+		connection.close();
+		return true;
+	}
+
+	/** Number of fetches reading from a connection right now. */
+	public int getActive() {
+		return active.size();
+	}
+
+	public int getConnectTimeoutMillis() {
+		return connectTimeoutMillis;
+	}
+
+	public HttpConnectionPool getPool() {
+		return pool;
+	}
+
+	public BufferPool getBuffers() {
+		return buffers;
+	}
+
+	public InflaterPool getInflaters() {
+		return inflaters;
+	}
+
+	/** Whether to send Accept-Encoding: gzip, deflate. On by default. */
+	public void setCompression(boolean compression) {
+		this.compression = compression;
+	}
+
+	public boolean isCompression() {
+		return compression;
+	}
+
+	/** Body bytes received, compressed or not. */
+	public long getBytesOnWire() {
+		return bytesOnWire.get();
+	}
+
+	/** Body bytes after decompression. */
+	public long getBytesDecoded() {
+		return bytesDecoded.get();
+	}
+
+	/** Number of requests sent, including redirects and retries. */
+	public long getRequests() {
+		return requests.get();
+	}
+
+	public void close() {
+		pool.close();
+	}
+
+	/** Sends the request and returns once the response headers are read. */
+	BodyInputStream open(String urlString, Map<String, String> headers)
+			throws IOException {
+		URL url = new URL(urlString);
+		for (int redirects = 0;; redirects++) {
+			final BodyInputStream body = exchange(url, headers);
+			final String location = body.head.header("location");
+
+			if (!isRedirect(body.head.status) || location == null
+					|| redirects == MAX_REDIRECTS) {
+				return body;
+			}
+			readAll(body); // so the connection can be reused
+			url = new URL(url, location);
+		}
+	}
+
+	private BodyInputStream exchange(URL url, Map<String, String> headers)
+			throws IOException {
+		final String scheme = url.getProtocol();
+		if (!scheme.equals("http") && !scheme.equals("https")) {
+			throw new MalformedURLException("Not an HTTP URL: " + url);
+		}
+		final int port = url.getPort() < 0 ? url.getDefaultPort() : url
+				.getPort();
+
+		PooledConnection connection = pool.acquire(scheme, url.getHost(),
+				port, connectTimeoutMillis, readTimeoutMillis);
+		active.put(Thread.currentThread(), connection);
+		try {
+			return send(connection, url, headers);
+		} catch (IOException e) {
+			pool.discard(connection);
+			// not retried when aborted, see abort
+			if (!connection.isReused() || Thread.currentThread().isInterrupted()) {
+				throw e;
+			}
+		}
+		// the server probably closed the idle connection, so try a new one
+		connection = pool.open(connection.key, scheme, url.getHost(), port,
+				connectTimeoutMillis, readTimeoutMillis);
+		active.put(Thread.currentThread(), connection);
+		try {
+			return send(connection, url, headers);
+		} catch (IOException e) {
+			pool.discard(connection);
+			throw e;
+		}
+	}
+
+	private BodyInputStream send(PooledConnection connection, URL url,
+			Map<String, String> headers) throws IOException {
+		requests.incrementAndGet();
+		writeRequest(connection.out, url, headers, compression);
+
+		String statusLine;
+		int status;
+		Map<String, String> responseHeaders;
+		do { // skip any 100 Continue responses
+			statusLine = BodyInputStream.readLine(connection.in);
+			if (statusLine == null) {
+				throw new EOFException("Connection closed by " + url.getHost());
+			}
+			status = parseStatus(statusLine, url);
+			responseHeaders = readHeaders(connection.in);
+		} while (status >= 100 && status < 200);
+
+		final HttpResponse head = new HttpResponse(url, status,
+				responseHeaders, null);
+		final String connectionHeader = head.header("connection");
+		final boolean keepAlive = statusLine.startsWith("HTTP/1.1") ? !"close"
+				.equalsIgnoreCase(connectionHeader) : "keep-alive"
+				.equalsIgnoreCase(connectionHeader);
+		final String transferEncoding = head.header("transfer-encoding");
+		final String contentLength = head.header("content-length");
+
+		if (status == 204 || status == 304) {
+			return new BodyInputStream(head, connection, pool,
+					BodyInputStream.FIXED, 0, keepAlive);
+		} else if (transferEncoding != null
+				&& transferEncoding.toLowerCase().contains("chunked")) {
+			return new BodyInputStream(head, connection, pool,
+					BodyInputStream.CHUNKED, 0, keepAlive);
+		} else if (contentLength != null) {
+			try {
+				return new BodyInputStream(head, connection, pool,
+						BodyInputStream.FIXED, Long.parseLong(contentLength
+								.trim()), keepAlive);
+			} catch (NumberFormatException e) {
+				throw new IOException("Bad Content-Length from " + url);
+			}
+		}
+		return new BodyInputStream(head, connection, pool,
+				BodyInputStream.UNTIL_CLOSE, 0, false);
+	}
+
+	private static void writeRequest(OutputStream out, URL url,
+			Map<String, String> headers, boolean compression)
+			throws IOException {
+		final StringBuilder request = new StringBuilder(256);
+		request.append("GET ")
+				.append(url.getFile().isEmpty() ? "/" : url.getFile())
+				.append(" HTTP/1.1\r\nHost: ").append(url.getHost());
+		if (url.getPort() >= 0 && url.getPort() != url.getDefaultPort()) {
+			request.append(':').append(url.getPort());
+		}
+		request.append("\r\nAccept: */*\r\nConnection: keep-alive\r\n");
+		if (compression && !containsIgnoreCase(headers, "accept-encoding")) {
+			request.append("Accept-Encoding: gzip, deflate\r\n");
+		}
+		for (Map.Entry<String, String> header : headers.entrySet()) {
+			request.append(header.getKey()).append(": ")
+					.append(header.getValue()).append("\r\n");
+		}
+		request.append("\r\n");
+		out.write(request.toString().getBytes("ISO-8859-1"));
+		out.flush();
+	}
+
+	private static boolean containsIgnoreCase(Map<String, String> headers,
+			String name) {
+		for (String key : headers.keySet()) {
+			if (key.equalsIgnoreCase(name)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	// wraps the body in a decoder if it has a Content-Encoding we know
+	private InputStream decode(BodyInputStream body) {
+		final int format = InflatingInputStream.formatOf(body.head
+				.header("content-encoding"));
+		if (format == 0 || body.head.status == 204
+				|| body.head.status == 304
+				|| "0".equals(body.head.header("content-length"))) {
+			return body;
+		}
+		return new InflatingInputStream(body, format, inflaters);
+	}
+
+	// without the headers that describe the encoded body
+	private static HttpResponse decodedHead(HttpResponse head, InputStream in) {
+		if (!(in instanceof InflatingInputStream)) {
+			return head;
+		}
+		final Map<String, String> headers = new LinkedHashMap<>(head.headers);
+		headers.remove("content-encoding");
+		headers.remove("content-length");
+		return new HttpResponse(head.url, head.status, headers, null);
+	}
+
+	private void count(BodyInputStream body, InputStream in) {
+		bytesOnWire.addAndGet(body.bytesRead);
+		bytesDecoded.addAndGet(in instanceof InflatingInputStream
+				? ((InflatingInputStream) in).decodedBytes : body.bytesRead);
+	}
+
+	static int parseStatus(String statusLine, URL url)
+			throws IOException {
+		final String[] parts = statusLine.split(" ", 3);
+		try {
+			if (parts.length >= 2 && parts[0].startsWith("HTTP/")) {
+				return Integer.parseInt(parts[1]);
+			}
+		} catch (NumberFormatException e) {
+			// fall through
+		}
+		throw new IOException("Bad status line \"" + statusLine + "\" from "
+				+ url);
+	}
+
+	static Map<String, String> readHeaders(InputStream in)
+			throws IOException {
+		final Map<String, String> headers = new LinkedHashMap<>();
+		String line;
+		while ((line = BodyInputStream.readLine(in)) != null
+				&& !line.isEmpty()) {
+			final int colon = line.indexOf(':');
+			if (colon <= 0) {
+				continue; // not a header, ignore it
+			}
+			final String name = line.substring(0, colon).trim().toLowerCase();
+			final String value = line.substring(colon + 1).trim();
+			final String previous = headers.get(name);
+			headers.put(name, previous == null ? value : previous + ", "
+					+ value);
+		}
+		return headers;
+	}
+
+	static boolean isRedirect(int status) {
+		return status == 301 || status == 302 || status == 303
+				|| status == 307 || status == 308;
+	}
+
+	static byte[] readAll(InputStream in) throws IOException {
+		final ByteArrayOutputStream out = new ByteArrayOutputStream(8192);
+		final byte[] buf = new byte[8192];
+		int n;
+		while ((n = in.read(buf)) != -1) {
+			out.write(buf, 0, n);
+		}
+		return out.toByteArray();
+	}
+}
@@ -0,0 +1,41 @@
+package com.adamldavis.java.lazy;
+
+import java.io.IOException;
+
+/**
+ * A failed fetch, with the kind of failure so callers can tell a slow host
+ * from a missing page without parsing messages.
+ */
+@SuppressWarnings("serial")
+public class FetchException extends IOException {
+
+	public enum Kind {
+		INVALID_URL, CONNECT, TIMEOUT, HTTP_STATUS, IO
+	}
+
+	public final Kind kind;
+	public final String url;
+	/** The HTTP status for HTTP_STATUS failures, otherwise 0. */
+	public final int status;
+
+	public FetchException(Kind kind, String url, String message) {
+		this(kind, url, 0, message, null);
+	}
+
+	public FetchException(Kind kind, String url, Throwable cause) {
+		this(kind, url, 0, String.valueOf(cause), cause);
+	}
+
+	public FetchException(Kind kind, String url, int status, String message,
+			Throwable cause) {
+		super(kind + " " + url + ": " + message, cause);
+		this.kind = kind;
+		this.url = url;
+		this.status = status;
+	}
+
+	public static FetchException httpStatus(String url, int status) {
+		return new FetchException(Kind.HTTP_STATUS, url, status, "HTTP "
+				+ status, null);
+	}
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright 2014 Adam L. Davis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.adamldavis.java.lazy;
+
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Writes the body straight into a file with FileChannel.transferFrom, so the
+ * bytes never become a byte[] or a String. A failed download deletes the
+ * partly written file. Returns the number of bytes written.
+ *
+ * @author Adam L. Davis
+ */
+public class FileSink implements BodySink<Long> {
+
+	private final Path file;
+	private FileChannel channel;
+	private long position;
+
+	public FileSink(Path file) {
+		this.file = file;
+	}
+
+	@Override
+	public void begin(HttpResponse head) throws IOException {
+		channel = FileChannel.open(file, CREATE, WRITE, TRUNCATE_EXISTING);
+	}
+
+	@Override
+	public void write(ByteBuffer data) throws IOException {
+		while (data.hasRemaining()) {
+			position += channel.write(data, position);
+		}
+	}
+
+	@Override
+	public void transfer(ReadableByteChannel body, BufferPool buffers)
+			throws IOException {
+		long n;
+		// transferFrom stops at the end of the body, or when it's empty
+		while ((n = channel.transferFrom(body, position, Long.MAX_VALUE
+				- position)) > 0) {
+			position += n;
+		}
+	}
+
+	@Override
+	public Long end() throws IOException {
+		channel.close();
+		return position;
+	}
+
+	@Override
+	public void abort() {
+		try {
+			if (channel != null) {
+				channel.close();
+			}
+			Files.deleteIfExists(file);
+		} catch (IOException e) {
+			// nothing more we can do
+		}
+	}
+
+	public Path getFile() {
+		return file;
+	}
+}
@@ -0,0 +1,521 @@
+/*
+ * Copyright 2014 Adam L. Davis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.adamldavis.java.lazy;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Caches successful GETs in memory (least recently used first out) and
+ * optionally in a directory, so they survive a restart. Fresh responses,
+ * going by Cache-Control max-age, Expires or the age of Last-Modified, are
+ * served without touching the network. Stale ones with an ETag or
+ * Last-Modified are revalidated with a conditional GET, and a 304 Not
+ * Modified reuses the stored body. Responses marked no-store are never kept
+ * and no-cache ones are always revalidated. Thread-safe.
+ *
+ * On disk each response is one file, headers and body together, written to
+ * a temporary file and renamed into place, so readers and concurrent writers
+ * never see half an entry. When there are more than maxEntriesOnDisk files
+ * the least recently written ones are deleted. The disk is only an extra
+ * tier: if writing to it fails (a full disk, a read-only directory) the
+ * failure is counted in getDiskErrors and the response is still returned and
+ * kept in memory.
+ *
+ * @author Adam L. Davis
+ */
+public class HttpCache {
+
+	private static final String SUFFIX = ".entry";
+
+	private final Path directory;
+	private final int maxEntriesOnDisk;
+	private final Map<String, Stored> memory;
+	private final AtomicInteger entriesOnDisk = new AtomicInteger(-1);
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong revalidations = new AtomicLong();
+	private final AtomicLong notModified = new AtomicLong();
+	private final AtomicLong diskReads = new AtomicLong();
+	private final AtomicLong evictions = new AtomicLong();
+	private final AtomicLong diskEvictions = new AtomicLong();
+	private final AtomicLong diskErrors = new AtomicLong();
+
+	/** A cache that only lives in memory. */
+	public HttpCache(int maxEntriesInMemory) {
+		this(null, maxEntriesInMemory);
+	}
+
+	/**
+	 * @param directory
+	 *            where responses are stored, or null to keep them in memory
+	 *            only.
+	 */
+	public HttpCache(Path directory, int maxEntriesInMemory) {
+		this(directory, maxEntriesInMemory, 10000);
+	}
+
+	@SuppressWarnings("serial")
+	public HttpCache(Path directory, final int maxEntriesInMemory,
+			int maxEntriesOnDisk) {
+		this.directory = directory;
+		this.maxEntriesOnDisk = maxEntriesOnDisk;
+		this.memory = new LinkedHashMap<String, Stored>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(
+					Map.Entry<String, Stored> eldest) {
+				if (size() > maxEntriesInMemory) {
+					evictions.incrementAndGet();
+					return true;
+				}
+				return false;
+			}
+		};
+	}
+
+	/** GETs the URL through the engine unless a usable copy is cached. */
+	public HttpResponse get(FetchEngine engine, String url) throws IOException {
+		final Stored cached = lookup(url);
+		final long now = System.currentTimeMillis();
+
+		if (cached != null && cached.isFresh(now)) {
+			hits.incrementAndGet();
+			return cached.response;
+		}
+		if (cached == null || !cached.canRevalidate()) {
+			misses.incrementAndGet();
+			final HttpResponse response = engine.get(url);
+			store(url, response, System.currentTimeMillis());
+			return response;
+		}
+		revalidations.incrementAndGet();
+		final Map<String, String> conditions = new HashMap<>();
+		final String etag = cached.response.header("etag");
+		final String lastModified = cached.response.header("last-modified");
+		if (etag != null) {
+			conditions.put("If-None-Match", etag);
+		}
+		if (lastModified != null) {
+			conditions.put("If-Modified-Since", lastModified);
+		}
+		final HttpResponse response = engine.get(url, conditions);
+		if (response.status != 304) {
+			store(url, response, System.currentTimeMillis());
+			return response;
+		}
+		notModified.incrementAndGet();
+		final HttpResponse updated = merge(cached.response, response);
+		store(url, updated, System.currentTimeMillis());
+		return updated;
+	}
+
+	/** Forgets everything, on disk too. */
+	public void clear() throws IOException {
+		synchronized (memory) {
+			memory.clear();
+		}
+		if (directory != null && Files.isDirectory(directory)) {
+			try (DirectoryStream<Path> files = Files.newDirectoryStream(
+					directory, "*.{entry,tmp}")) {
+				for (Path file : files) {
+					Files.deleteIfExists(file);
+				}
+			}
+			entriesOnDisk.set(0);
+		}
+	}
+
+	/** Served from the cache without any request. */
+	public long getHits() {
+		return hits.get();
+	}
+
+	/** Not cached at all, or stale without a way to revalidate. */
+	public long getMisses() {
+		return misses.get();
+	}
+
+	/** Conditional GETs sent for stale entries. */
+	public long getRevalidations() {
+		return revalidations.get();
+	}
+
+	/** Revalidations answered with 304, so the body wasn't sent again. */
+	public long getNotModified() {
+		return notModified.get();
+	}
+
+	/** Entries that were only found on disk. */
+	public long getDiskReads() {
+		return diskReads.get();
+	}
+
+	/** Entries pushed out of memory (they stay on disk). */
+	public long getEvictions() {
+		return evictions.get();
+	}
+
+	/** Entries deleted from disk to stay under maxEntriesOnDisk. */
+	public long getDiskEvictions() {
+		return diskEvictions.get();
+	}
+
+	/** Entries that couldn't be written to or deleted from disk. */
+	public long getDiskErrors() {
+		return diskErrors.get();
+	}
+
+	@Override
+	public String toString() {
+		return "hits " + getHits() + ", misses " + getMisses()
+				+ ", revalidations " + getRevalidations() + " ("
+				+ getNotModified() + " not modified), disk reads "
+				+ getDiskReads() + ", evictions " + getEvictions()
+				+ ", disk evictions " + getDiskEvictions() + ", disk errors "
+				+ getDiskErrors();
+	}
+
+	private Stored lookup(String url) throws IOException {
+		synchronized (memory) {
+			final Stored entry = memory.get(url);
+			if (entry != null) {
+				return entry;
+			}
+		}
+		final Stored entry = load(url);
+		if (entry != null) {
+			diskReads.incrementAndGet();
+			synchronized (memory) {
+				memory.put(url, entry);
+			}
+		}
+		return entry;
+	}
+
+	private void store(String url, HttpResponse response, long now) {
+		if (!isCacheable(response)) {
+			synchronized (memory) {
+				memory.remove(url);
+			}
+			try {
+				delete(url); // or the old response would come back from disk
+			} catch (IOException e) {
+				diskErrors.incrementAndGet();
+			}
+			return;
+		}
+		// the response may already have been this old when it arrived
+		final long age = seconds(response.header("age"));
+		final Stored entry = new Stored(response, age > 0 ? now - age * 1000
+				: now);
+		synchronized (memory) {
+			memory.put(url, entry);
+		}
+		try {
+			save(url, entry);
+		} catch (IOException e) {
+			diskErrors.incrementAndGet();
+		}
+	}
+
+	static boolean isCacheable(HttpResponse response) {
+		final Map<String, String> cacheControl = directives(response
+				.header("cache-control"));
+		return response.status == 200 && response.body != null
+				&& !cacheControl.containsKey("no-store")
+				&& !"*".equals(response.header("vary"))
+				&& (freshnessMillis(response) > 0
+						|| response.header("etag") != null || response
+						.header("last-modified") != null);
+	}
+
+	/** How long after it was sent the response may be used as it is. */
+	static long freshnessMillis(HttpResponse response) {
+		final Map<String, String> cacheControl = directives(response
+				.header("cache-control"));
+		if (cacheControl.containsKey("no-cache")) {
+			return 0;
+		}
+		if (cacheControl.containsKey("max-age")) {
+			return Math.max(0, seconds(cacheControl.get("max-age")) * 1000);
+		}
+		final long date = millis(response.header("date"));
+		final long expires = millis(response.header("expires"));
+		if (response.header("expires") != null) {
+			// an Expires that can't be parsed means already expired
+			return date > 0 && expires > 0 ? Math.max(0, expires - date) : 0;
+		}
+		final long lastModified = millis(response.header("last-modified"));
+		if (date > 0 && lastModified > 0) {
+			return Math.max(0, (date - lastModified) / 10); // the usual heuristic
+		}
+		return 0;
+	}
+
+	/** @return lower-case directive names with their values or "". */
+	static Map<String, String> directives(String cacheControl) {
+		final Map<String, String> directives = new HashMap<>();
+		if (cacheControl != null) {
+			for (String directive : cacheControl.split(",")) {
+				final String[] pair = directive.trim().split("=", 2);
+				if (!pair[0].isEmpty()) {
+					directives.put(pair[0].trim().toLowerCase(),
+							pair.length == 2 ? pair[1].trim().replace("\"", "")
+									: "");
+				}
+			}
+		}
+		return directives;
+	}
+
+	/** The stored response with the headers of the 304 that confirmed it. */
+	static HttpResponse merge(HttpResponse stored, HttpResponse notModified) {
+		final Map<String, String> headers = new LinkedHashMap<>(stored.headers);
+		for (Map.Entry<String, String> header : notModified.headers
+				.entrySet()) {
+			final String name = header.getKey();
+			if (!name.equals("content-length")
+					&& !name.equals("transfer-encoding")) {
+				headers.put(name, header.getValue());
+			}
+		}
+		return new HttpResponse(stored.url, stored.status, headers,
+				stored.body);
+	}
+
+	private static long seconds(String value) {
+		if (value == null) {
+			return -1;
+		}
+		try {
+			return Long.parseLong(value.trim());
+		} catch (NumberFormatException e) {
+			return -1;
+		}
+	}
+
+	private static long millis(String httpDate) {
+		if (httpDate == null) {
+			return -1;
+		}
+		try {
+			return ZonedDateTime.parse(httpDate.trim(),
+					DateTimeFormatter.RFC_1123_DATE_TIME).toInstant()
+					.toEpochMilli();
+		} catch (DateTimeParseException e) {
+			return -1;
+		}
+	}
+
+	private Stored load(String url) throws IOException {
+		if (directory == null) {
+			return null;
+		}
+		final Properties meta = new Properties();
+		final byte[] body;
+		try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(
+				Files.readAllBytes(file(url))))) {
+			final byte[] metaBytes = new byte[in.readInt()];
+			in.readFully(metaBytes);
+			meta.load(new ByteArrayInputStream(metaBytes));
+			body = new byte[in.available()];
+			in.readFully(body);
+		} catch (NoSuchFileException e) {
+			return null;
+		} catch (IOException | RuntimeException e) {
+			return null; // cut short or not ours, just fetch it again
+		}
+		if (!url.equals(meta.getProperty("url"))) {
+			return null; // a hash collision, as unlikely as that is
+		}
+		final Map<String, String> headers = new LinkedHashMap<>();
+		for (String key : meta.stringPropertyNames()) {
+			if (key.startsWith("header.")) {
+				headers.put(key.substring("header.".length()),
+						meta.getProperty(key));
+			}
+		}
+		try {
+			final HttpResponse response = new HttpResponse(new URL(
+					meta.getProperty("final-url")), Integer.parseInt(meta
+					.getProperty("status")), headers, body);
+			return new Stored(response, Long.parseLong(meta
+					.getProperty("stored")));
+		} catch (NumberFormatException | NullPointerException e) {
+			return null; // written by something else, just fetch it again
+		}
+	}
+
+	private void save(String url, Stored entry) throws IOException {
+		if (directory == null) {
+			return;
+		}
+		Files.createDirectories(directory);
+		final Properties meta = new Properties();
+		meta.setProperty("url", url);
+		meta.setProperty("final-url", entry.response.url.toString());
+		meta.setProperty("status", String.valueOf(entry.response.status));
+		meta.setProperty("stored", String.valueOf(entry.storedAt));
+		for (Map.Entry<String, String> header : entry.response.headers
+				.entrySet()) {
+			meta.setProperty("header." + header.getKey(), header.getValue());
+		}
+		final ByteArrayOutputStream metaBytes = new ByteArrayOutputStream();
+		meta.store(metaBytes, null);
+
+		// a temp file of its own, so concurrent saves of one URL can't mix
+		final Path temp = Files.createTempFile(directory,
+				fileName(url) + ".", ".tmp");
+		try {
+			try (DataOutputStream out = new DataOutputStream(
+					Files.newOutputStream(temp))) {
+				out.writeInt(metaBytes.size());
+				metaBytes.writeTo(out);
+				out.write(entry.response.body);
+			}
+			final Path file = file(url);
+			final boolean added = !Files.exists(file);
+			Files.move(temp, file, REPLACE_EXISTING, ATOMIC_MOVE);
+			if (added && countOnDisk() > maxEntriesOnDisk) {
+				trimDisk();
+			}
+		} finally {
+			Files.deleteIfExists(temp);
+		}
+	}
+
+	private void delete(String url) throws IOException {
+		if (directory != null && Files.deleteIfExists(file(url))) {
+			if (entriesOnDisk.get() > 0) {
+				entriesOnDisk.decrementAndGet();
+			}
+		}
+	}
+
+	// counts the files once, then keeps count
+	private int countOnDisk() throws IOException {
+		if (entriesOnDisk.get() < 0) {
+			entriesOnDisk.compareAndSet(-1, listOnDisk().size());
+			return entriesOnDisk.get();
+		}
+		return entriesOnDisk.incrementAndGet();
+	}
+
+	// deletes the oldest files until there's room for a tenth more
+	private synchronized void trimDisk() throws IOException {
+		final List<Path> files = listOnDisk();
+		final int keep = maxEntriesOnDisk - maxEntriesOnDisk / 10;
+		if (files.size() > keep) {
+			final Map<Path, Long> written = new HashMap<>();
+			for (Path file : files) {
+				written.put(file, lastModified(file));
+			}
+			Collections.sort(files,
+					(a, b) -> Long.compare(written.get(a), written.get(b)));
+			for (Path file : files.subList(0, files.size() - keep)) {
+				if (Files.deleteIfExists(file)) {
+					diskEvictions.incrementAndGet();
+				}
+			}
+		}
+		entriesOnDisk.set(listOnDisk().size());
+	}
+
+	private List<Path> listOnDisk() throws IOException {
+		final List<Path> files = new ArrayList<>();
+		try (DirectoryStream<Path> stream = Files.newDirectoryStream(
+				directory, "*" + SUFFIX)) {
+			for (Path file : stream) {
+				files.add(file);
+			}
+		}
+		return files;
+	}
+
+	private static long lastModified(Path file) {
+		try {
+			return Files.getLastModifiedTime(file).toMillis();
+		} catch (IOException e) {
+			return 0; // deleted meanwhile
+		}
+	}
+
+	private Path file(String url) {
+		return directory.resolve(fileName(url) + SUFFIX);
+	}
+
+	static String fileName(String url) {
+		try {
+			final byte[] hash = MessageDigest.getInstance("SHA-1").digest(
+					url.getBytes(StandardCharsets.UTF_8));
+			final StringBuilder hex = new StringBuilder(hash.length * 2);
+			for (byte b : hash) {
+				hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(
+						Character.forDigit(b & 0xF, 16));
+			}
+			return hex.toString();
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e); // every JVM has SHA-1
+		}
+	}
+
+	/** A stored response and when it was received. */
+	static final class Stored {
+		final HttpResponse response;
+		final long storedAt;
+
+		Stored(HttpResponse response, long storedAt) {
+			this.response = response;
+			this.storedAt = storedAt;
+		}
+
+		boolean isFresh(long now) {
+			return now - storedAt < freshnessMillis(response);
+		}
+
+		boolean canRevalidate() {
+			return response.header("etag") != null
+					|| response.header("last-modified") != null;
+		}
+	}
+}
@@ -0,0 +1,181 @@
+/*
+ * Copyright 2014 Adam L. Davis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.adamldavis.java.lazy;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.Deque;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.SSLSocketFactory;
+
+/**
+ * Keeps idle keep-alive connections per scheme/host/port so repeated requests
+ * to the same host skip the TCP (and TLS) handshake. Connections that have
+ * been idle longer than keepAliveMillis are closed instead of reused.
+ *
+ * @author Adam L. Davis
+ */
+public class HttpConnectionPool implements Closeable {
+
+	private final int maxIdlePerHost;
+	private final long keepAliveMillis;
+	private final SSLSocketFactory sslSocketFactory;
+
+	private final ConcurrentMap<String, Deque<PooledConnection>> idle = new ConcurrentHashMap<>();
+
+	private final AtomicLong opened = new AtomicLong();
+	private final AtomicLong reused = new AtomicLong();
+	private final AtomicLong closed = new AtomicLong();
+
+	public HttpConnectionPool() {
+		this(8, 30000);
+	}
+
+	public HttpConnectionPool(int maxIdlePerHost, long keepAliveMillis) {
+		this(maxIdlePerHost, keepAliveMillis, (SSLSocketFactory) SSLSocketFactory
+				.getDefault());
+	}
+
+	/** @param sslSocketFactory for https, e.g. one trusting a test certificate. */
+	public HttpConnectionPool(int maxIdlePerHost, long keepAliveMillis,
+			SSLSocketFactory sslSocketFactory) {
+		this.maxIdlePerHost = maxIdlePerHost;
+		this.keepAliveMillis = keepAliveMillis;
+		this.sslSocketFactory = sslSocketFactory;
+	}
+
+	/** Reuses an idle connection to the host or opens a new one. */
+	PooledConnection acquire(String scheme, String host, int port,
+			int connectTimeoutMillis, int readTimeoutMillis) throws IOException {
+		final String key = scheme + "://" + host + ":" + port;
+		final Deque<PooledConnection> connections = idle.get(key);
+		final long now = System.currentTimeMillis();
+
+		if (connections != null) {
+			PooledConnection connection;
+			while ((connection = connections.pollFirst()) != null) {
+				if (now - connection.idleSince < keepAliveMillis
+						&& !connection.socket.isClosed()) {
+					connection.socket.setSoTimeout(readTimeoutMillis);
+					connection.requests++;
+					reused.incrementAndGet();
+					return connection;
+				}
+				discard(connection);
+			}
+		}
+		return open(key, scheme, host, port, connectTimeoutMillis,
+				readTimeoutMillis);
+	}
+
+	/** Opens a new connection, never reusing an idle one. */
+	PooledConnection open(String key, String scheme, String host, int port,
+			int connectTimeoutMillis, int readTimeoutMillis) throws IOException {
+		Socket socket = new Socket();
+		try {
+			socket.setTcpNoDelay(true);
+			socket.connect(new InetSocketAddress(host, port),
+					connectTimeoutMillis);
+			socket.setSoTimeout(readTimeoutMillis);
+			if ("https".equals(scheme)) {
+				SSLSocket ssl = (SSLSocket) sslSocketFactory.createSocket(
+						socket, host, port, true);
+				// a layered SSLSocket doesn't check the certificate is for
+				// this host unless asked to
+				final SSLParameters params = ssl.getSSLParameters();
+				params.setEndpointIdentificationAlgorithm("HTTPS");
+				ssl.setSSLParameters(params);
+				ssl.startHandshake();
+				socket = ssl;
+			}
+			final PooledConnection connection = new PooledConnection(key,
+					socket);
+			connection.requests = 1;
+			opened.incrementAndGet();
+			return connection;
+		} catch (IOException e) {
+			socket.close();
+			throw e;
+		}
+	}
+
+	/** Returns a connection whose response was fully read. */
+	void release(PooledConnection connection) {
+		Deque<PooledConnection> connections = idle.get(connection.key);
+		if (connections == null) {
+			idle.putIfAbsent(connection.key,
+					new ConcurrentLinkedDeque<PooledConnection>());
+			connections = idle.get(connection.key);
+		}
+		if (connections.size() >= maxIdlePerHost) {
+			discard(connection);
+			return;
+		}
+		connection.idleSince = System.currentTimeMillis();
+		// most recently used first, the oldest ones are left to expire
+		connections.addFirst(connection);
+	}
+
+	/** Closes a connection that can't be reused. */
+	void discard(PooledConnection connection) {
+		connection.close();
+		closed.incrementAndGet();
+	}
+
+	/** Closes all idle connections. */
+	public void close() {
+		for (Deque<PooledConnection> connections : idle.values()) {
+			PooledConnection connection;
+			while ((connection = connections.pollFirst()) != null) {
+				discard(connection);
+			}
+		}
+	}
+
+	public long getOpened() {
+		return opened.get();
+	}
+
+	public long getReused() {
+		return reused.get();
+	}
+
+	public long getClosed() {
+		return closed.get();
+	}
+
+	public int getIdle() {
+		int count = 0;
+		for (Deque<PooledConnection> connections : idle.values()) {
+			count += connections.size();
+		}
+		return count;
+	}
+
+	@Override
+	public String toString() {
+		return "opened " + getOpened() + ", reused " + getReused()
+				+ ", closed " + getClosed() + ", idle " + getIdle();
+	}
+}
@@ -0,0 +1,58 @@
+/*
+ * Copyright 2014 Adam L. Davis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.adamldavis.java.lazy;
+
+import java.net.URL;
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Status, headers and (unless it was streamed somewhere else) the body of an
+ * HTTP response. Header names are lower-case; repeated headers are joined
+ * with ", ".
+ *
+ * @author Adam L. Davis
+ */
+public class HttpResponse {
+
+	public HttpResponse(URL url, int status, Map<String, String> headers,
+			byte[] body) {
+		this.url = url;
+		this.status = status;
+		this.headers = Collections.unmodifiableMap(headers);
+		this.body = body;
+	}
+
+	/** Where the response came from, after any redirects. */
+	public final URL url;
+	public final int status;
+	public final Map<String, String> headers;
+	public final byte[] body;
+
+	/** @return the header's value or null. */
+	public String header(String name) {
+		return headers.get(name.toLowerCase());
+	}
+
+	public HttpResponse withBody(byte[] newBody) {
+		return new HttpResponse(url, status, headers, newBody);
+	}
+
+	@Override
+	public String toString() {
+		return status + " " + url;
+	}
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright 2014 Adam L. Davis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.adamldavis.java.lazy;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.Inflater;
+
+/**
+ * Raw (nowrap) Inflaters and their input buffers, kept for the next
+ * compressed response. An Inflater holds native memory that is only freed by
+ * end() or the garbage collector, so making one per response adds up.
+ * Thread-safe.
+ *
+ * @author Adam L. Davis
+ */
+public class InflaterPool {
+
+	static final int BUFFER_SIZE = 8192;
+
+	private final int maxPooled;
+	private final Queue<Inflater> inflaters = new ConcurrentLinkedQueue<>();
+	private final Queue<byte[]> buffers = new ConcurrentLinkedQueue<>();
+	private final AtomicInteger pooledInflaters = new AtomicInteger();
+	private final AtomicInteger pooledBuffers = new AtomicInteger();
+	private final AtomicLong created = new AtomicLong();
+
+	public InflaterPool() {
+		this(32);
+	}
+
+	public InflaterPool(int maxPooled) {
+		this.maxPooled = maxPooled;
+	}
+
+	public Inflater acquire() {
+		final Inflater inflater = inflaters.poll();
+		if (inflater != null) {
+			pooledInflaters.decrementAndGet();
+			return inflater;
+		}
+		created.incrementAndGet();
+		return new Inflater(true);
+	}
+
+	public void release(Inflater inflater) {
+		if (pooledInflaters.incrementAndGet() > maxPooled) {
+			pooledInflaters.decrementAndGet();
+			inflater.end();
+			return;
+		}
+		inflater.reset();
+		inflaters.offer(inflater);
+	}
+
+	byte[] acquireBuffer() {
+		final byte[] buffer = buffers.poll();
+		if (buffer != null) {
+			pooledBuffers.decrementAndGet();
+			return buffer;
+		}
+		return new byte[BUFFER_SIZE];
+	}
+
+	void releaseBuffer(byte[] buffer) {
+		if (pooledBuffers.incrementAndGet() > maxPooled) {
+			pooledBuffers.decrementAndGet();
+			return;
+		}
+		buffers.offer(buffer);
+	}
+
+	/** Number of Inflaters ever made, which stays flat once warmed up. */
+	public long getCreated() {
+		return created.get();
+	}
+
+	@Override
+	public String toString() {
+		return "inflaters created " + getCreated() + ", pooled "
+				+ pooledInflaters.get();
+	}
+}
@@ -0,0 +1,253 @@
+package com.adamldavis.java.lazy;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.Adler32;
+import java.util.zip.CRC32;
+import java.util.zip.Checksum;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+/**
+ * Decodes a gzip or deflate Content-Encoding as the body is read, with a
+ * pooled Inflater and input buffer, so the compressed body is never held
+ * whole. gzip members and zlib streams are checked against their CRC32 or
+ * Adler-32. "deflate" is meant to be zlib-wrapped, but some servers send raw
+ * deflate, so both are accepted.
+ */
+class InflatingInputStream extends InputStream {
+
+	static final int GZIP = 1;
+	static final int DEFLATE = 2;
+
+	private static final int FHCRC = 2, FEXTRA = 4, FNAME = 8, FCOMMENT = 16;
+
+	private final InputStream in;
+	private final int format;
+	private final InflaterPool pool;
+	private Inflater inflater;
+	private byte[] buffer;
+	private int pos, limit; // the unread part of buffer
+	private Checksum checksum;
+	private long memberBytes;
+	private boolean started, eof;
+
+	/** Bytes handed out after decoding. */
+	long decodedBytes;
+
+	InflatingInputStream(InputStream in, int format, InflaterPool pool) {
+		this.in = in;
+		this.format = format;
+		this.pool = pool;
+		this.inflater = pool.acquire();
+		this.buffer = pool.acquireBuffer();
+	}
+
+	/** @return GZIP, DEFLATE or 0 for a Content-Encoding header. */
+	static int formatOf(String contentEncoding) {
+		if (contentEncoding == null) {
+			return 0;
+		}
+		switch (contentEncoding.trim().toLowerCase()) {
+		case "gzip":
+		case "x-gzip":
+			return GZIP;
+		case "deflate":
+			return DEFLATE;
+		default:
+			return 0;
+		}
+	}
+
+	@Override
+	public int read() throws IOException {
+		final byte[] one = new byte[1];
+		return read(one, 0, 1) < 0 ? -1 : one[0] & 0xFF;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		if (eof) {
+			return -1;
+		}
+		if (inflater == null) {
+			throw new IOException("Stream closed");
+		}
+		if (len == 0) {
+			return 0;
+		}
+		if (!started) {
+			readHeader();
+			started = true;
+		}
+		for (;;) {
+			final int n;
+			try {
+				n = inflater.inflate(b, off, len);
+			} catch (DataFormatException e) {
+				throw new ZipException("Bad compressed data: "
+						+ e.getMessage());
+			}
+			if (n > 0) {
+				if (checksum != null) {
+					checksum.update(b, off, n);
+				}
+				memberBytes += n;
+				decodedBytes += n;
+				return n;
+			}
+			if (inflater.finished()) {
+				pos = limit - inflater.getRemaining();
+				readTrailer();
+				if (!nextMember()) {
+					eof = true;
+					release();
+					return -1;
+				}
+			} else if (inflater.needsDictionary()) {
+				throw new ZipException("Preset dictionaries aren't supported");
+			} else if (inflater.needsInput()) {
+				if (!fill()) {
+					throw new EOFException("Compressed body ended early");
+				}
+				inflater.setInput(buffer, pos, limit - pos);
+				pos = limit;
+			}
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		release();
+		in.close();
+	}
+
+	private void readHeader() throws IOException {
+		if (format == GZIP) {
+			if (nextByte() != 0x1f || nextByte() != 0x8b) {
+				throw new ZipException("Not in gzip format");
+			}
+			if (nextByte() != 8) {
+				throw new ZipException("Unsupported gzip compression method");
+			}
+			final int flags = nextByte();
+			skip(6); // modification time, extra flags and OS
+			if ((flags & FEXTRA) != 0) {
+				skip(nextByte() | nextByte() << 8);
+			}
+			if ((flags & FNAME) != 0) {
+				while (nextByte() != 0) {
+				}
+			}
+			if ((flags & FCOMMENT) != 0) {
+				while (nextByte() != 0) {
+				}
+			}
+			if ((flags & FHCRC) != 0) {
+				skip(2);
+			}
+			checksum = new CRC32();
+		} else {
+			ensure(2);
+			final int cmf = buffer[pos] & 0xFF, flg = buffer[pos + 1] & 0xFF;
+			if ((cmf & 0x0F) == 8 && (cmf << 8 | flg) % 31 == 0) {
+				pos += 2; // zlib
+				if ((flg & 0x20) != 0) {
+					throw new ZipException(
+							"Preset dictionaries aren't supported");
+				}
+				checksum = new Adler32();
+			} else {
+				checksum = null; // raw deflate, nothing to check
+			}
+		}
+		memberBytes = 0;
+		inflater.setInput(buffer, pos, limit - pos);
+		pos = limit;
+	}
+
+	private void readTrailer() throws IOException {
+		if (format == GZIP) {
+			final long crc = nextByte() | nextByte() << 8 | nextByte() << 16
+					| (long) nextByte() << 24;
+			final long size = nextByte() | nextByte() << 8 | nextByte() << 16
+					| (long) nextByte() << 24;
+			if (crc != checksum.getValue()) {
+				throw new ZipException("Corrupt gzip body, bad CRC");
+			}
+			if (size != (memberBytes & 0xFFFFFFFFL)) {
+				throw new ZipException("Corrupt gzip body, bad size");
+			}
+		} else if (checksum != null) {
+			final long adler = (long) nextByte() << 24 | nextByte() << 16
+					| nextByte() << 8 | nextByte();
+			if (adler != checksum.getValue()) {
+				throw new ZipException("Corrupt deflate body, bad Adler-32");
+			}
+		}
+	}
+
+	// gzip bodies may be several members one after the other
+	private boolean nextMember() throws IOException {
+		if (format != GZIP || (pos == limit && !fill())
+				|| (buffer[pos] & 0xFF) != 0x1f) {
+			pos = limit;
+			while (fill()) {
+				pos = limit; // read to the end so the connection is reused
+			}
+			return false;
+		}
+		inflater.reset();
+		readHeader();
+		return true;
+	}
+
+	private int nextByte() throws IOException {
+		ensure(1);
+		return buffer[pos++] & 0xFF;
+	}
+
+	private void skip(int n) throws IOException {
+		for (int i = 0; i < n; i++) {
+			nextByte();
+		}
+	}
+
+	// makes sure n unread bytes are in the buffer
+	private void ensure(int n) throws IOException {
+		while (limit - pos < n) {
+			if (pos > 0) {
+				System.arraycopy(buffer, pos, buffer, 0, limit - pos);
+				limit -= pos;
+				pos = 0;
+			}
+			final int read = in.read(buffer, limit, buffer.length - limit);
+			if (read < 0) {
+				throw new EOFException("Compressed body ended early");
+			}
+			limit += read;
+		}
+	}
+
+	// replaces the consumed buffer with more of the body, false at the end
+	private boolean fill() throws IOException {
+		final int read = in.read(buffer, 0, buffer.length);
+		if (read < 0) {
+			return false;
+		}
+		pos = 0;
+		limit = read;
+		return true;
+	}
+
+	private void release() {
+		if (inflater != null) {
+			pool.release(inflater);
+			pool.releaseBuffer(buffer);
+			inflater = null;
+			buffer = null;
+		}
+	}
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright 2014 Adam L. Davis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.adamldavis.java.lazy;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counts latencies in log-linear buckets: exact below 256 and within 1% above
+ * that (each power of two is split into 128 buckets, so at most 1/128 off), up
+ * to Long.MAX_VALUE, in a fixed 58KB of counters. So percentiles such as p99
+ * and p999 cost nothing to keep and don't need every sample stored.
+ * Recording is thread-safe and lock-free.
+ *
+ * @author Adam L. Davis
+ */
+public class LatencyHistogram {
+
+	private static final int SUB_BUCKET_BITS = 8;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	private static final int HALF = SUB_BUCKETS / 2;
+	private static final int BUCKETS = bucket(Long.MAX_VALUE) + 1;
+
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+	private final AtomicLong count = new AtomicLong();
+	private final AtomicLong total = new AtomicLong();
+	private final AtomicLong min = new AtomicLong(Long.MAX_VALUE);
+	private final AtomicLong max = new AtomicLong();
+
+	/** @param value a latency (any unit, usually nanoseconds), not negative. */
+	public void record(long value) {
+		if (value < 0) {
+			throw new IllegalArgumentException("Negative latency " + value);
+		}
+		counts.incrementAndGet(bucket(value));
+		count.incrementAndGet();
+		total.addAndGet(value);
+		min.accumulateAndGet(value, Math::min);
+		max.accumulateAndGet(value, Math::max);
+	}
+
+	public long getCount() {
+		return count.get();
+	}
+
+	public long getMin() {
+		return count.get() == 0 ? 0 : min.get();
+	}
+
+	public long getMax() {
+		return max.get();
+	}
+
+	public double getMean() {
+		final long n = count.get();
+		return n == 0 ? 0 : (double) total.get() / n;
+	}
+
+	/**
+	 * @param percent
+	 *            such as 50, 99 or 99.9.
+	 * @return the highest value in the bucket holding that percentile, so at
+	 *         least that share of the values are no bigger.
+	 */
+	public long getPercentile(double percent) {
+		final long n = count.get();
+		if (n == 0) {
+			return 0;
+		}
+		final long rank = Math.max(1, (long) Math.ceil(percent / 100 * n));
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += counts.get(i);
+			if (seen >= rank) {
+				return Math.min(highest(i), getMax());
+			}
+		}
+		return getMax();
+	}
+
+	/** Adds the other histogram's values to this one. */
+	public void add(LatencyHistogram other) {
+		for (int i = 0; i < BUCKETS; i++) {
+			final long c = other.counts.get(i);
+			if (c != 0) {
+				counts.addAndGet(i, c);
+			}
+		}
+		count.addAndGet(other.count.get());
+		total.addAndGet(other.total.get());
+		min.accumulateAndGet(other.min.get(), Math::min);
+		max.accumulateAndGet(other.max.get(), Math::max);
+	}
+
+	/** Count, mean, p50, p99, p999 and max, each divided by unit. */
+	public String summary(double unit, String unitName) {
+		return String.format("n=%d mean=%.2f%s p50=%.2f%s p99=%.2f%s "
+				+ "p999=%.2f%s max=%.2f%s", getCount(), getMean() / unit,
+				unitName, getPercentile(50) / unit, unitName,
+				getPercentile(99) / unit, unitName,
+				getPercentile(99.9) / unit, unitName, getMax() / unit,
+				unitName);
+	}
+
+	@Override
+	public String toString() {
+		return summary(1e6, "ms");
+	}
+
+	static int bucket(long value) {
+		if (value < SUB_BUCKETS) {
+			return (int) value;
+		}
+		final int shift = 64 - Long.numberOfLeadingZeros(value)
+				- SUB_BUCKET_BITS;
+		return shift * HALF + (int) (value >>> shift);
+	}
+
+	static long highest(int bucket) {
+		if (bucket < SUB_BUCKETS) {
+			return bucket;
+		}
+		final int shift = bucket / HALF - 1;
+		final long sub = bucket - shift * HALF;
+		return ((sub + 1) << shift) - 1;
+	}
+}
@@ -0,0 +1,259 @@
+/*
+ * Copyright 2014 Adam L. Davis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.adamldavis.java.lazy;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * An HTTP server on the loopback interface that stands in for real web-sites
+ * when comparing downloaders, so the numbers don't depend on the internet.
+ * Every response waits latencyMillis before its headers and then sends
+ * payloadBytes at no more than bytesPerSecond (0 means as fast as possible).
+ * The pages are text made of common words, gzip or deflate compressed when
+ * the request accepts it. Each page has an ETag, and a matching If-None-Match
+ * gets a 304.
+ *
+ * Pages are /page/N; ?bytes=N overrides the payload size of one request.
+ *
+ * Run the JVM with -Dsun.net.httpserver.nodelay=true. The JDK's HttpServer
+ * otherwise leaves Nagle's algorithm on, and together with delayed ACKs that
+ * adds about 40ms to some responses. The Maven and Gradle test runs set it.
+ *
+ * @author Adam L. Davis
+ */
+public class LocalHttpServer implements Closeable {
+
+	private static final int WRITE_SIZE = 8192;
+	private static final String[] WORDS = { "the", "of", "and", "to", "a",
+			"in", "is", "it", "you", "that", "he", "was", "for", "on", "are",
+			"with", "as", "his", "they", "be", "at", "one", "have", "this",
+			"from", "or", "had", "by", "word", "but", "what", "some", "we",
+			"can", "out", "other", "were", "all", "there", "when", "up",
+			"use", "your", "how", "said", "an", "each", "she", "which", "do",
+			"their", "time", "if", "will", "way", "about", "many", "then",
+			"them", "write", "would", "like", "so", "these", "her", "long",
+			"make", "thing", "see", "him", "two", "has", "look", "more",
+			"day", "could", "go", "come", "did", "number", "sound", "no",
+			"most", "people", "my", "over", "know", "water", "than", "call",
+			"first", "who", "may", "down", "side", "been", "now", "find" };
+
+	private final HttpServer server;
+	private final ExecutorService executor = Executors.newCachedThreadPool();
+	private final long latencyMillis;
+	private final long bytesPerSecond;
+	private final int payloadBytes;
+	private final byte[] payload;
+	private final AtomicLong requests = new AtomicLong();
+	private final AtomicLong notModified = new AtomicLong();
+	private final AtomicLong bytesSent = new AtomicLong();
+	// compressed bodies by size and encoding
+	private final Map<String, byte[]> encoded = new ConcurrentHashMap<>();
+
+	public LocalHttpServer(long latencyMillis, long bytesPerSecond,
+			int payloadBytes) throws IOException {
+		this.latencyMillis = latencyMillis;
+		this.bytesPerSecond = bytesPerSecond;
+		this.payloadBytes = payloadBytes;
+		this.payload = text(payloadBytes);
+		server = createServer(1024);
+		server.setExecutor(executor);
+		server.createContext("/page/", this::handle);
+		server.start();
+	}
+
+	/**
+	 * An HttpServer that isn't started yet, on a free port of 127.0.0.1. See
+	 * the class comment for turning Nagle's algorithm off.
+	 */
+	public static HttpServer createServer(int backlog) throws IOException {
+		return HttpServer.create(new InetSocketAddress("127.0.0.1", 0),
+				backlog);
+	}
+
+	/** @return count distinct page URLs. */
+	public String[] urls(int count) {
+		final String[] urls = new String[count];
+		for (int i = 0; i < count; i++) {
+			urls[i] = "http://127.0.0.1:" + getPort() + "/page/" + i;
+		}
+		return urls;
+	}
+
+	public int getPort() {
+		return server.getAddress().getPort();
+	}
+
+	public long getRequests() {
+		return requests.get();
+	}
+
+	public long getNotModified() {
+		return notModified.get();
+	}
+
+	/** Body bytes sent (after any compression), not counting headers. */
+	public long getBytesSent() {
+		return bytesSent.get();
+	}
+
+	public void close() {
+		server.stop(0);
+		executor.shutdownNow();
+	}
+
+	@Override
+	public String toString() {
+		return "latency " + latencyMillis + "ms, "
+				+ (bytesPerSecond > 0 ? bytesPerSecond + " bytes/s" : "unlimited")
+				+ ", " + payloadBytes + " bytes per page";
+	}
+
+	private void handle(HttpExchange exchange) throws IOException {
+		requests.incrementAndGet();
+		try {
+			sleep(latencyMillis);
+			final byte[] plain = body(exchange.getRequestURI().getQuery());
+			final String encoding = encoding(exchange.getRequestHeaders()
+					.getFirst("Accept-Encoding"));
+			final String etag = "\"" + exchange.getRequestURI().getPath()
+					+ "-" + plain.length
+					+ (encoding == null ? "" : "-" + encoding) + "\"";
+			exchange.getResponseHeaders().add("ETag", etag);
+			exchange.getResponseHeaders().add("Vary", "Accept-Encoding");
+			exchange.getResponseHeaders().add("Content-Type",
+					"text/plain; charset=US-ASCII");
+			if (etag.equals(exchange.getRequestHeaders().getFirst(
+					"If-None-Match"))) {
+				notModified.incrementAndGet();
+				exchange.sendResponseHeaders(304, -1);
+				return;
+			}
+			final byte[] body = encoding == null ? plain : encode(plain,
+					encoding);
+			if (encoding != null) {
+				exchange.getResponseHeaders().add("Content-Encoding", encoding);
+			}
+			exchange.sendResponseHeaders(200, body.length);
+			try (OutputStream out = exchange.getResponseBody()) {
+				send(out, body);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} finally {
+			exchange.close();
+		}
+	}
+
+	private static String encoding(String acceptEncoding) {
+		if (acceptEncoding == null) {
+			return null;
+		}
+		final String accepted = acceptEncoding.toLowerCase();
+		return accepted.contains("gzip") ? "gzip" : accepted
+				.contains("deflate") ? "deflate" : null;
+	}
+
+	private byte[] encode(final byte[] plain, final String encoding) {
+		return encoded.computeIfAbsent(plain.length + encoding, key -> {
+			final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			try (OutputStream out = encoding.equals("gzip")
+					? new GZIPOutputStream(bytes)
+					: new DeflaterOutputStream(bytes)) {
+				out.write(plain);
+			} catch (IOException e) {
+				throw new IllegalStateException(e); // not from memory
+			}
+			return bytes.toByteArray();
+		});
+	}
+
+	// the same words every time, so runs can be compared
+	static byte[] text(int size) {
+		final StringBuilder text = new StringBuilder(size + 16);
+		long seed = 42;
+		int line = 0;
+		while (text.length() < size) {
+			seed = seed * 6364136223846793005L + 1442695040888963407L;
+			final String word = WORDS[(int) ((seed >>> 33) % WORDS.length)];
+			text.append(word);
+			line += word.length() + 1;
+			if (line > 72) {
+				text.append('\n');
+				line = 0;
+			} else {
+				text.append(' ');
+			}
+		}
+		return Arrays.copyOf(
+				text.toString().getBytes(StandardCharsets.US_ASCII), size);
+	}
+
+	private byte[] body(String query) {
+		if (query != null && query.startsWith("bytes=")) {
+			try {
+				final int size = Integer.parseInt(query.substring(6));
+				return size == payloadBytes ? payload : text(Math.max(0,
+						size));
+			} catch (NumberFormatException e) {
+				// the default size then
+			}
+		}
+		return payload;
+	}
+
+	// writes in pieces, sleeping to keep to bytesPerSecond
+	private void send(OutputStream out, byte[] body) throws IOException,
+			InterruptedException {
+		final long start = System.nanoTime();
+		for (int sent = 0; sent < body.length;) {
+			final int n = Math.min(WRITE_SIZE, body.length - sent);
+			if (bytesPerSecond > 0) { // wait until these bytes are due
+				final long due = start + (sent + n) * 1000000000L
+						/ bytesPerSecond;
+				final long early = due - System.nanoTime();
+				if (early > 0) {
+					out.flush();
+					Thread.sleep(early / 1000000, (int) (early % 1000000));
+				}
+			}
+			bytesSent.addAndGet(n); // before the client can see them
+			out.write(body, sent, n);
+			sent += n;
+		}
+	}
+
+	private static void sleep(long millis) throws InterruptedException {
+		if (millis > 0) {
+			Thread.sleep(millis);
+		}
+	}
+}
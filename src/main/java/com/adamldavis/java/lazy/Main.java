@@ -17,53 +17,132 @@ package com.adamldavis.java.lazy;
 
 import static java.lang.System.out;
 
-import java.util.LinkedList;
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
 
-import com.googlecode.totallylazy.Sequences;
-import com.googlecode.totallylazy.numbers.Numbers;
-
 /**
- * Runs serial and concurrent downloads of multiple web-sites multiple times and
- * calculates the average time for each strategy. Should demonstrate that
- * concurrent is better.
+ * Compares the Downloader strategies: serial, concurrent, virtual threads,
+ * asynchronous, scheduled, cached and coalesced. By default they all download
+ * from a {@link LocalHttpServer}, so the comparison is repeatable and works
+ * without a network; --live downloads the real web-sites instead. Should
+ * demonstrate that concurrent is better.
+ *
+ * Options: --live, --latency=ms, --bandwidth=bytes/s, --bytes=page size,
+ * --pages=n, --warmup=n and --iterations=n. Run it with
+ * -Dsun.net.httpserver.nodelay=true so the local server doesn't add Nagle
+ * delays to the timings (see {@link LocalHttpServer}).
  * 
  * @author Adam L. Davis
  * 
  */
 public class Main {
 
-	private static final int TIMES = 10;
+	/** Several downloaders downloading the same urls at once. */
+	static class Burst extends Downloader {
+		final Downloader[] downloaders;
 
-	public static class DownloadTimer implements Runnable {
-		Downloader downloader;
-		final List<Long> times = new LinkedList<>();
+		Burst(Downloader... downloaders) {
+			this.downloaders = downloaders;
+		}
 
-		public DownloadTimer(Downloader d) {
-			downloader = d;
+		@Override
+		public void download() {
+			final Thread[] threads = new Thread[downloaders.length];
+			for (int i = 0; i < threads.length; i++) {
+				downloaders[i].urls = urls;
+				threads[i] = new Thread(downloaders[i]::download);
+				threads[i].start();
+			}
+			for (Thread thread : threads) {
+				try {
+					thread.join();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
 		}
+	}
 
-		public void run() {
-			for (int i = 0; i < TIMES; i++) {
-				long start = System.currentTimeMillis();
-				downloader.download();
-				times.add(System.currentTimeMillis() - start);
+	public static void main(String[] args) throws IOException {
+		boolean live = false;
+		long latency = 50, bandwidth = 2000000;
+		int bytes = 64 * 1024, pages = 5, warmup = 3, iterations = 20;
+		for (String arg : args) {
+			final String value = arg.substring(arg.indexOf('=') + 1);
+			if (arg.equals("--live")) {
+				live = true;
+			} else if (arg.startsWith("--latency=")) {
+				latency = Long.parseLong(value);
+			} else if (arg.startsWith("--bandwidth=")) {
+				bandwidth = Long.parseLong(value);
+			} else if (arg.startsWith("--bytes=")) {
+				bytes = Integer.parseInt(value);
+			} else if (arg.startsWith("--pages=")) {
+				pages = Integer.parseInt(value);
+			} else if (arg.startsWith("--warmup=")) {
+				warmup = Integer.parseInt(value);
+			} else if (arg.startsWith("--iterations=")) {
+				iterations = Integer.parseInt(value);
+			} else {
+				throw new IllegalArgumentException("Unknown option " + arg);
 			}
 		}
+		final LocalHttpServer server = live ? null : new LocalHttpServer(
+				latency, bandwidth, bytes);
+		final String[] urls = live ? new SerialDownloader().urls : server
+				.urls(pages);
+		out.println(live ? "Downloading live sites" : "Local server: "
+				+ server);
+		if (!live && !Boolean.getBoolean("sun.net.httpserver.nodelay")) {
+			out.println("Warning: without -Dsun.net.httpserver.nodelay=true "
+					+ "the local server adds Nagle delays to the timings");
+		}
 
-		public Number getAverageTime() {
-			return Sequences.sequence(times).reduce(Numbers.average);
+		final DownloadBenchmark benchmark = new DownloadBenchmark(urls,
+				warmup, iterations);
+		final List<DownloadBenchmark.Result> results = new ArrayList<>();
+		results.add(benchmark.run("Concurrent", new ConcurrentDownloader()));
+		results.add(benchmark.run("Serial", new SerialDownloader()));
+		results.add(benchmark.run("Virtual threads",
+				new VirtualThreadDownloader()));
+		try (AsyncDownloader async = new AsyncDownloader()) {
+			results.add(benchmark.run("Async", async));
 		}
-	}
+		final ScheduledDownloader scheduled = new ScheduledDownloader();
+		results.add(benchmark.run("Scheduled", scheduled));
+		final Downloader cached = new SerialDownloader();
+		cached.setCache(new HttpCache(100));
+		results.add(benchmark.run("Cached", cached));
+		final SingleFlight<String, String> flights = new SingleFlight<>(1000);
+		final Downloader[] burst = new Downloader[4];
+		for (int i = 0; i < burst.length; i++) {
+			burst[i] = new ConcurrentDownloader();
+			burst[i].setCoalescer(flights);
+		}
+		results.add(benchmark.run("Coalesced x4", new Burst(burst)));
 
-	public static void main(String[] args) {
-		out.println("Concurrent:");
-		DownloadTimer dt = new DownloadTimer(new ConcurrentDownloader());
-		dt.run();
-		out.println("Serial:");
-		DownloadTimer sdt = new DownloadTimer(new SerialDownloader());
-		sdt.run();
-		out.println("Concurrent Time " + dt.getAverageTime().longValue());
-		out.println("Serial Time " + sdt.getAverageTime().longValue());
+		out.println();
+		for (DownloadBenchmark.Result result : results) {
+			out.println(result);
+		}
+		out.println("Concurrent connections: "
+				+ results.get(0).downloader.getEngine().getPool());
+		out.println("Serial connections: "
+				+ results.get(1).downloader.getEngine().getPool());
+		final FetchEngine engine = results.get(1).downloader.getEngine();
+		out.println("Serial bytes: " + engine.getBytesOnWire()
+				+ " on the wire, " + engine.getBytesDecoded() + " decoded");
+		out.println("Cache: " + cached.getCache());
+		out.println("Coalescing: " + flights);
+		for (DownloadScheduler.HostStats host : scheduled.getScheduler()
+				.getHostStats().values()) {
+			out.println(host);
+		}
+		if (server != null) {
+			out.println("Server requests: " + server.getRequests() + " ("
+					+ server.getNotModified() + " not modified)");
+			server.close();
+		}
 	}
 }
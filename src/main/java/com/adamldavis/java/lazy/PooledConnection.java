@@ -0,0 +1,40 @@
+package com.adamldavis.java.lazy;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+
+/**
+ * One open (possibly TLS) socket to a host, kept by {@link HttpConnectionPool}
+ * between requests.
+ */
+class PooledConnection {
+	final String key;
+	final Socket socket;
+	final InputStream in;
+	final OutputStream out;
+	long idleSince;
+	int requests;
+
+	PooledConnection(String key, Socket socket) throws IOException {
+		this.key = key;
+		this.socket = socket;
+		this.in = new BufferedInputStream(socket.getInputStream(), 16 * 1024);
+		this.out = new BufferedOutputStream(socket.getOutputStream());
+	}
+
+	boolean isReused() {
+		return requests > 1;
+	}
+
+	void close() {
+		try {
+			socket.close();
+		} catch (IOException e) {
+			// nothing more we can do
+		}
+	}
+}
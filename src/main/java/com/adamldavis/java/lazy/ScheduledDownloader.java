@@ -0,0 +1,63 @@
+/*
+ * Copyright 2014 Adam L. Davis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.adamldavis.java.lazy;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Downloads the urls through a {@link DownloadScheduler}, so no host gets
+ * more than its share of connections, flaky hosts are retried and a stalled
+ * one can't hold up the batch past its deadline.
+ *
+ * @author Adam L. Davis
+ */
+public class ScheduledDownloader extends Downloader {
+
+	private final DownloadScheduler scheduler;
+	private final long requestTimeoutMillis;
+	private final long batchTimeoutMillis;
+
+	public ScheduledDownloader() {
+		this(20000, 60000);
+	}
+
+	public ScheduledDownloader(long requestTimeoutMillis,
+			long batchTimeoutMillis) {
+		this.scheduler = new DownloadScheduler(this);
+		this.requestTimeoutMillis = requestTimeoutMillis;
+		this.batchTimeoutMillis = batchTimeoutMillis;
+	}
+
+	@Override
+	public void download() {
+		final Map<String, CompletableFuture<String>> results = scheduler
+				.submitBatch(urls, DownloadScheduler.DEFAULT_PRIORITY,
+						requestTimeoutMillis, batchTimeoutMillis);
+		for (CompletableFuture<String> result : results.values()) {
+			try {
+				result.join();
+			} catch (CompletionException e) {
+				e.getCause().printStackTrace();
+			}
+		}
+	}
+
+	public DownloadScheduler getScheduler() {
+		return scheduler;
+	}
+}
@@ -0,0 +1,175 @@
+/*
+ * Copyright 2014 Adam L. Davis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.adamldavis.java.lazy;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Iterator;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lets concurrent calls for the same key share one execution: the first
+ * caller runs it and everyone who asks while it's running waits for and
+ * gets the same result (or exception). Optionally a successful result is
+ * also handed out for reuseMillis after it finished, which evens out bursts
+ * of requests for the same URL. Thread-safe.
+ *
+ * @author Adam L. Davis
+ */
+public class SingleFlight<K, V> {
+
+	/** The work to share, such as one download. */
+	public interface Call<V> {
+		V call() throws IOException;
+	}
+
+	/** Drop expired results every so many executions. */
+	private static final int PURGE_EVERY = 64;
+
+	private final long reuseMillis;
+	private final ConcurrentMap<K, Flight<V>> flights = new ConcurrentHashMap<>();
+
+	private final AtomicLong executions = new AtomicLong();
+	private final AtomicLong shared = new AtomicLong();
+	private final AtomicLong reused = new AtomicLong();
+
+	/** Shares in-flight calls only. */
+	public SingleFlight() {
+		this(0);
+	}
+
+	public SingleFlight(long reuseMillis) {
+		this.reuseMillis = reuseMillis;
+	}
+
+	public V execute(K key, Call<V> call) throws IOException {
+		for (;;) {
+			final Flight<V> flight = flights.get(key);
+			if (flight != null) {
+				if (!flight.isDone()) {
+					shared.incrementAndGet();
+					return flight.await();
+				}
+				if (!flight.isExpired(reuseMillis)) {
+					reused.incrementAndGet();
+					return flight.await();
+				}
+				flights.remove(key, flight);
+				continue;
+			}
+			final Flight<V> mine = new Flight<>();
+			if (flights.putIfAbsent(key, mine) == null) {
+				return run(key, mine, call);
+			}
+		}
+	}
+
+	/** Calls that actually ran. */
+	public long getExecutions() {
+		return executions.get();
+	}
+
+	/** Calls that waited for one already running. */
+	public long getShared() {
+		return shared.get();
+	}
+
+	/** Calls answered with a recent result. */
+	public long getReused() {
+		return reused.get();
+	}
+
+	@Override
+	public String toString() {
+		return "executions " + getExecutions() + ", shared " + getShared()
+				+ ", reused " + getReused();
+	}
+
+	private V run(K key, Flight<V> flight, Call<V> call) throws IOException {
+		if (executions.incrementAndGet() % PURGE_EVERY == 0) {
+			purge();
+		}
+		try {
+			final V value = call.call();
+			flight.finish(value);
+			if (reuseMillis <= 0) {
+				flights.remove(key, flight);
+			}
+			return value;
+		} catch (IOException | RuntimeException | Error e) {
+			flights.remove(key, flight); // failures are never reused
+			flight.fail(e);
+			throw e;
+		}
+	}
+
+	private void purge() {
+		for (Iterator<Flight<V>> it = flights.values().iterator(); it
+				.hasNext();) {
+			final Flight<V> flight = it.next();
+			if (flight.isDone() && flight.isExpired(reuseMillis)) {
+				it.remove();
+			}
+		}
+	}
+
+	private static final class Flight<V> {
+		final CompletableFuture<V> result = new CompletableFuture<>();
+		volatile long finishedAt;
+
+		boolean isDone() {
+			return result.isDone();
+		}
+
+		boolean isExpired(long reuseMillis) {
+			return result.isCompletedExceptionally()
+					|| System.currentTimeMillis() - finishedAt >= reuseMillis;
+		}
+
+		void finish(V value) {
+			finishedAt = System.currentTimeMillis();
+			result.complete(value);
+		}
+
+		void fail(Throwable e) {
+			finishedAt = System.currentTimeMillis();
+			result.completeExceptionally(e);
+		}
+
+		V await() throws IOException {
+			try {
+				return result.get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("Interrupted waiting for "
+						+ "a shared call");
+			} catch (ExecutionException e) {
+				// the same exception the caller that ran it got
+				final Throwable cause = e.getCause();
+				if (cause instanceof IOException) {
+					throw (IOException) cause;
+				} else if (cause instanceof RuntimeException) {
+					throw (RuntimeException) cause;
+				}
+				throw (Error) cause;
+			}
+		}
+	}
+}
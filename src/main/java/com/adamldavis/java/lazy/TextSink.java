@@ -0,0 +1,128 @@
+/*
+ * Copyright 2014 Adam L. Davis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.adamldavis.java.lazy;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.IllegalCharsetNameException;
+import java.nio.charset.StandardCharsets;
+import java.nio.charset.UnsupportedCharsetException;
+
+/**
+ * Decodes the body into a String as it arrives, with the charset from the
+ * Content-Type header or else the default one. Bad bytes become the
+ * replacement character rather than failing the download.
+ *
+ * @author Adam L. Davis
+ */
+public class TextSink implements BodySink<String> {
+
+	/** Never grow the builder up front by more than this. */
+	private static final int MAX_PRESIZE = 1 << 20;
+
+	private final Charset defaultCharset;
+	private final CharBuffer chars = CharBuffer.allocate(4096);
+	// the start of a character split between two buffers
+	private final ByteBuffer leftover = ByteBuffer.allocate(16);
+	private CharsetDecoder decoder;
+	private StringBuilder text;
+
+	public TextSink() {
+		this(StandardCharsets.UTF_8);
+	}
+
+	public TextSink(Charset defaultCharset) {
+		this.defaultCharset = defaultCharset;
+	}
+
+	@Override
+	public void begin(HttpResponse head) throws IOException {
+		decoder = charsetOf(head.header("content-type"), defaultCharset)
+				.newDecoder().onMalformedInput(CodingErrorAction.REPLACE)
+				.onUnmappableCharacter(CodingErrorAction.REPLACE);
+		final String length = head.header("content-length");
+		int capacity = 1024;
+		if (length != null) {
+			try {
+				capacity = (int) Math.min(Long.parseLong(length.trim()),
+						MAX_PRESIZE);
+			} catch (NumberFormatException e) {
+				// just guess then
+			}
+		}
+		text = new StringBuilder(capacity);
+	}
+
+	@Override
+	public void write(ByteBuffer data) throws IOException {
+		// finish the split character a byte at a time
+		while (leftover.position() > 0 && data.hasRemaining()) {
+			leftover.put(data.get()).flip();
+			decode(leftover, false);
+			leftover.compact();
+		}
+		decode(data, false);
+		leftover.put(data);
+	}
+
+	@Override
+	public String end() throws IOException {
+		leftover.flip();
+		decode(leftover, true);
+		while (decoder.flush(chars).isOverflow()) {
+			drain();
+		}
+		drain();
+		return text.toString();
+	}
+
+	private void decode(ByteBuffer data, boolean endOfInput) {
+		while (decoder.decode(data, chars, endOfInput).isOverflow()) {
+			drain();
+		}
+		drain();
+	}
+
+	private void drain() {
+		chars.flip();
+		text.append(chars);
+		chars.clear();
+	}
+
+	/** @return the charset parameter of a Content-Type, or the default. */
+	static Charset charsetOf(String contentType, Charset defaultCharset) {
+		if (contentType == null) {
+			return defaultCharset;
+		}
+		for (String param : contentType.split(";")) {
+			final String[] pair = param.trim().split("=", 2);
+			if (pair.length == 2 && pair[0].trim().equalsIgnoreCase("charset")) {
+				final String name = pair[1].trim().replace("\"", "");
+				try {
+					return Charset.forName(name);
+				} catch (IllegalCharsetNameException
+						| UnsupportedCharsetException e) {
+					return defaultCharset;
+				}
+			}
+		}
+		return defaultCharset;
+	}
+}
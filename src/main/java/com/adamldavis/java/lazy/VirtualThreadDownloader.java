@@ -0,0 +1,187 @@
+/*
+ * Copyright 2014 Adam L. Davis
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.adamldavis.java.lazy;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Runs each fetch on its own thread, at most maxConcurrent at a time, and
+ * treats the whole download as one unit: if any fetch fails or the deadline
+ * passes, everything still running is cancelled before download returns.
+ * Cancelling interrupts the fetch threads and closes the connections they
+ * are reading from, since a blocking socket read ignores interrupts, and
+ * then waits for the threads to end, so no fetch outlives the call.
+ *
+ * When running on Java 21 or later the threads are virtual threads, so
+ * thousands of fetches can be in flight without thousands of platform
+ * threads. On older JVMs it falls back to a cached thread pool, which is why
+ * the concurrency limit matters there.
+ *
+ * @author Adam L. Davis
+ */
+public class VirtualThreadDownloader extends Downloader {
+
+	private final int maxConcurrent;
+	private final long deadlineMillis;
+
+	public VirtualThreadDownloader() {
+		this(256, 60000);
+	}
+
+	public VirtualThreadDownloader(int maxConcurrent, long deadlineMillis) {
+		this.maxConcurrent = maxConcurrent;
+		this.deadlineMillis = deadlineMillis;
+	}
+
+	@Override
+	public void download() {
+		try {
+			downloadAll();
+		} catch (IOException | TimeoutException e) {
+			e.printStackTrace();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * @return the bodies in the same order as urls.
+	 * @throws IOException
+	 *             the first fetch failure; the others were cancelled.
+	 * @throws TimeoutException
+	 *             if the deadline passed first.
+	 */
+	public List<String> downloadAll() throws IOException,
+			InterruptedException, TimeoutException {
+		final long deadline = System.nanoTime()
+				+ MILLISECONDS.toNanos(deadlineMillis);
+		final ExecutorService executor = newThreadPerTaskExecutor();
+		final CompletionService<String> completion = new ExecutorCompletionService<>(
+				executor);
+		final Semaphore permits = new Semaphore(maxConcurrent);
+		final List<Future<String>> futures = new ArrayList<>(urls.length);
+		final Set<Thread> fetching = ConcurrentHashMap.newKeySet();
+		int completed = 0;
+		try {
+			for (final String url : urls) {
+				if (!permits.tryAcquire(deadline - System.nanoTime(),
+						NANOSECONDS)) {
+					throw new TimeoutException("Deadline passed with "
+							+ (urls.length - futures.size()) + " not started");
+				}
+				// stop submitting as soon as anything has failed
+				Future<String> done;
+				while ((done = completion.poll()) != null) {
+					checkResult(done);
+					completed++;
+				}
+				futures.add(completion.submit(new Callable<String>() {
+					public String call() throws Exception {
+						final Thread thread = Thread.currentThread();
+						fetching.add(thread);
+						try {
+							return fetchOrThrow(url);
+						} finally {
+							fetching.remove(thread);
+							permits.release();
+						}
+					}
+				}));
+			}
+			while (completed < urls.length) {
+				final Future<String> done = completion.poll(deadline
+						- System.nanoTime(), NANOSECONDS);
+				if (done == null) {
+					throw new TimeoutException("Deadline passed with "
+							+ (urls.length - completed) + " unfinished");
+				}
+				checkResult(done);
+				completed++;
+			}
+			final List<String> bodies = new ArrayList<>(urls.length);
+			for (Future<String> future : futures) {
+				bodies.add(future.get());
+			}
+			return bodies;
+		} catch (ExecutionException e) {
+			throw new IllegalStateException(e); // checkResult handles these
+		} finally {
+			cancel(executor, futures, fetching);
+		}
+	}
+
+	// does nothing to the fetches that already finished
+	private void cancel(ExecutorService executor, List<Future<String>> futures,
+			Set<Thread> fetching) {
+		for (Future<String> future : futures) {
+			future.cancel(true);
+		}
+		executor.shutdownNow();
+		try {
+			do {
+				for (Thread thread : fetching) {
+					engine.abort(thread);
+				}
+				// again, in case a fetch was still connecting
+			} while (!executor.awaitTermination(10, MILLISECONDS));
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private static void checkResult(Future<String> done) throws IOException,
+			InterruptedException {
+		try {
+			done.get();
+		} catch (ExecutionException e) {
+			final Throwable cause = e.getCause();
+			if (cause instanceof IOException) {
+				throw (IOException) cause;
+			} else if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			} else if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw new IOException(cause);
+		}
+	}
+
+	/** Virtual threads when the JVM has them, otherwise a cached pool. */
+	static ExecutorService newThreadPerTaskExecutor() {
+		try {
+			return (ExecutorService) Executors.class.getMethod(
+					"newVirtualThreadPerTaskExecutor").invoke(null);
+		} catch (ReflectiveOperationException e) {
+			return Executors.newCachedThreadPool();
+		}
+	}
+}
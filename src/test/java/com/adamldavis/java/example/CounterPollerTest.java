@@ -0,0 +1,234 @@
+package com.adamldavis.java.example;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.adamldavis.java.lazy.LocalHttpServer;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+public class CounterPollerTest {
+
+	HttpServer server;
+	String base;
+	final AtomicBoolean broken = new AtomicBoolean();
+
+	@Before
+	public void startServer() throws IOException {
+		server = LocalHttpServer.createServer(100);
+		server.createContext("/n/", new HttpHandler() {
+			public void handle(HttpExchange exchange) throws IOException {
+				if (broken.get()) {
+					respond(exchange, 500, "oops");
+				} else {
+					respond(exchange, 200, exchange.getRequestURI().getPath()
+							.substring(3) + "\n");
+				}
+			}
+		});
+		server.createContext("/slow", new HttpHandler() {
+			public void handle(HttpExchange exchange) throws IOException {
+				try {
+					Thread.sleep(200);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				respond(exchange, 200, "5");
+			}
+		});
+		server.createContext("/negative", new HttpHandler() {
+			public void handle(HttpExchange exchange) throws IOException {
+				respond(exchange, 200, " -9223372036854775808\r\n");
+			}
+		});
+		server.createContext("/text", new HttpHandler() {
+			public void handle(HttpExchange exchange) throws IOException {
+				respond(exchange, 200, "12x");
+			}
+		});
+		server.createContext("/huge", new HttpHandler() {
+			public void handle(HttpExchange exchange) throws IOException {
+				respond(exchange, 200, "9223372036854775808");
+			}
+		});
+		server.createContext("/error", new HttpHandler() {
+			public void handle(HttpExchange exchange) throws IOException {
+				respond(exchange, 503, "busy");
+			}
+		});
+		server.start();
+		base = "http://127.0.0.1:" + server.getAddress().getPort();
+	}
+
+	@After
+	public void stopServer() {
+		server.stop(0);
+	}
+
+	static void respond(HttpExchange exchange, int status, String body)
+			throws IOException {
+		final byte[] bytes = body.getBytes("US-ASCII");
+		exchange.sendResponseHeaders(status, bytes.length);
+		try (OutputStream out = exchange.getResponseBody()) {
+			out.write(bytes);
+		}
+	}
+
+	@Test
+	public void shouldReportTypedErrors() throws Exception {
+		try (CounterPoller poller = new CounterPoller(Arrays.asList(base
+				+ "/n/42", base + "/negative", base + "/text", base + "/huge",
+				base + "/error", "nope://localhost/",
+				"http://127.0.0.1:99999/", base + "/n/43"))) {
+			assertTrue(poller.refreshNow());
+			final CounterTable table = poller.getTable();
+
+			assertEquals(42, table.getValue(0));
+			assertEquals(Long.MIN_VALUE, table.getValue(1));
+			assertThat(table.getError(0), is(PollError.NONE));
+			assertThat(table.getError(1), is(PollError.NONE));
+			assertThat(table.getError(2), is(PollError.NOT_A_NUMBER));
+			assertThat(table.getError(3), is(PollError.OVERFLOW));
+			assertThat(table.getError(4), is(PollError.HTTP_STATUS));
+			assertEquals(503, table.getStatus(4));
+			assertThat(table.getError(5), is(PollError.INVALID_URL));
+			assertThat(table.getError(6), is(PollError.IO));
+			// the rest of the batch is still polled
+			assertEquals(43, table.getValue(7));
+			assertEquals(5, poller.getFailures());
+			assertEquals(8, poller.getPolls());
+		}
+	}
+
+	@Test
+	public void shouldKeepLastValueButGoStale() throws Exception {
+		try (CounterPoller poller = new CounterPoller(Arrays.asList(base
+				+ "/n/7", base + "/text"))) {
+			final CounterTable table = poller.getTable();
+			final long before = System.currentTimeMillis();
+			poller.refreshNow();
+			assertFalse(table.isStale(0, 1000, before));
+			assertTrue(table.isStale(1, 1000, before)); // never had a value
+
+			broken.set(true);
+			poller.refreshNow();
+			assertEquals(7, table.getValue(0));
+			assertThat(table.getError(0), is(PollError.HTTP_STATUS));
+			assertTrue(table.getCheckedAt(0) >= table.getUpdatedAt(0));
+			assertTrue(table.isStale(0, 1000, table.getUpdatedAt(0) + 1001));
+			assertEquals(2, table.countStale(1000, before + 5000));
+		}
+	}
+
+	@Test
+	public void shouldPollManyEndpointsOverFewConnections() throws Exception {
+		final List<String> urls = new ArrayList<>();
+		for (int i = 0; i < 1000; i++) {
+			urls.add(base + "/n/" + i);
+		}
+		try (CounterPoller poller = new CounterPoller(urls, 8, 50, 2000,
+				2000)) {
+			for (int round = 0; round < 3; round++) {
+				assertTrue(poller.refreshNow());
+			}
+			for (int id = 0; id < urls.size(); id++) {
+				assertEquals(id, poller.getTable().getValue(id));
+			}
+			assertEquals(3000, poller.getPolls());
+			assertEquals(0, poller.getFailures());
+			// each thread keeps its connection
+			assertTrue(poller.getEngine().getPool().getOpened() <= 16);
+		}
+	}
+
+	@Test
+	public void shouldRefreshOnSchedule() throws Exception {
+		try (CounterPoller poller = new CounterPoller(Arrays.asList(base
+				+ "/n/1"))) {
+			poller.start(20);
+			final long deadline = System.currentTimeMillis() + 5000;
+			while (poller.getRefreshes() < 3
+					&& System.currentTimeMillis() < deadline) {
+				Thread.sleep(10);
+			}
+			assertTrue(poller.getRefreshes() >= 3);
+			assertEquals(1, poller.getTable().getValue(0));
+		}
+	}
+
+	@Test
+	public void shouldSkipRefreshesThatAreDueWhileOneRuns() throws Exception {
+		try (CounterPoller poller = new CounterPoller(Arrays.asList(base
+				+ "/slow"))) {
+			poller.start(50);
+			Thread.sleep(1000);
+			final long refreshes = poller.getRefreshes();
+			assertTrue(poller.getSkipped() > 0);
+			assertTrue(refreshes >= 2 && refreshes <= 5);
+			assertEquals(5, poller.getTable().getValue(0));
+		}
+	}
+
+	@Test
+	public void shouldCloseQuietlyWhileRefreshing() throws Exception {
+		final List<Throwable> uncaught = new CopyOnWriteArrayList<>();
+		final Thread.UncaughtExceptionHandler handler = Thread
+				.getDefaultUncaughtExceptionHandler();
+		Thread.setDefaultUncaughtExceptionHandler((t, e) -> uncaught.add(e));
+		try {
+			final List<String> urls = new ArrayList<>();
+			for (int i = 0; i < 50; i++) {
+				urls.add(base + "/n/" + i);
+			}
+			for (int round = 0; round < 20; round++) {
+				CounterPoller poller = new CounterPoller(urls, 2, 1, 2000, 2000);
+				poller.start(1);
+				Thread.sleep(round % 5);
+				poller.close();
+			}
+			Thread.sleep(200);
+			assertEquals(new ArrayList<Throwable>(), uncaught);
+		} finally {
+			Thread.setDefaultUncaughtExceptionHandler(handler);
+		}
+	}
+
+	@Test
+	public void shouldParseNumbersSplitAcrossBuffers() {
+		final DigitSink sink = new DigitSink();
+		sink.begin(null);
+		for (String part : new String[] { "  -12", "34", "5\n", "" }) {
+			sink.write(ByteBuffer.wrap(part.getBytes()));
+		}
+		assertEquals(-12345, sink.end().getValue());
+
+		for (String bad : new String[] { "", " ", "-", "1 2", "--1", "1-" }) {
+			sink.begin(null);
+			try {
+				sink.write(ByteBuffer.wrap(bad.getBytes()));
+				sink.end();
+				fail(bad);
+			} catch (NumberFormatException e) {
+				// expected
+			}
+		}
+	}
+}
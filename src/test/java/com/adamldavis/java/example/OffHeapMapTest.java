@@ -0,0 +1,147 @@
+package com.adamldavis.java.example;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+
+public class OffHeapMapTest {
+
+	OffHeapMap<Long, Double> map;
+
+	@Before
+	public void setupMap() {
+		map = (OffHeapMap<Long, Double>) Factory.makeNewMap("offheap",
+				Long.class, Double.class);
+	}
+
+	@After
+	public void closeMap() {
+		map.close();
+	}
+
+	@Test
+	public void shouldPutAndGet() {
+		assertThat(map.put(1L, 3.5), nullValue());
+		assertThat(map.put(1L, 4.0), equalTo(3.5));
+		assertThat(map.get(1L), equalTo(4.0));
+		assertThat(map.get(2L), nullValue());
+		assertThat(map.size(), is(1));
+	}
+
+	@Test
+	public void shouldGrowAndMatchHashMap() {
+		Map<Long, Double> expected = new HashMap<>();
+		for (long i = 0; i < 100000; i++) {
+			map.put(i * 31, i / 2.0);
+			expected.put(i * 31, i / 2.0);
+		}
+		for (long i = 0; i < 100000; i += 3) {
+			assertThat(map.remove(i * 31), equalTo(expected.remove(i * 31)));
+		}
+		assertThat(map.size(), is(expected.size()));
+		assertThat(map.equals(expected), is(true));
+	}
+
+	@Test
+	public void shouldReuseDeletedSlots() {
+		for (int round = 0; round < 50; round++) {
+			for (long i = 0; i < 1000; i++) {
+				map.put(i + round * 1000, 1.0);
+			}
+			for (long i = 0; i < 1000; i++) {
+				map.remove(i + round * 1000);
+			}
+		}
+		assertThat(map.isEmpty(), is(true));
+		assertThat(map.getOffHeapBytes() < 1024 * 1024, is(true));
+	}
+
+	@Test
+	public void shouldRemoveThroughIterator() {
+		map.put(1L, 1.0);
+		map.put(2L, 2.0);
+		Iterator<Map.Entry<Long, Double>> it = map.entrySet().iterator();
+		it.next();
+		it.remove();
+		assertThat(map.size(), is(1));
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void shouldFailAfterClose() {
+		map.close();
+		map.get(1L);
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void shouldFailToPutAfterClose() {
+		map.close();
+		map.put(1L, 1.0);
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void shouldFailToIterateAfterClose() {
+		map.put(1L, 1.0);
+		map.put(2L, 2.0);
+		Iterator<Map.Entry<Long, Double>> it = map.entrySet().iterator();
+		map.close();
+		it.next();
+	}
+
+	// the build runs tests with -XX:MaxDirectMemorySize=64m, so without
+	// freeing on close these maps add up to five times the limit
+	@Test
+	public void shouldFreeDirectMemoryOnClose() {
+		final long before = directMemoryUsed();
+		for (int round = 0; round < 10; round++) {
+			OffHeapMap<Long, Double> big = new OffHeapMap<>(
+					OffHeapSerializer.forClass(Long.class),
+					OffHeapSerializer.forClass(Double.class), 1000000);
+			big.put((long) round, 1.0);
+			assertThat(big.getOffHeapBytes() > 32L << 20, is(true));
+			big.close();
+			assertThat(directMemoryUsed() - before < 1 << 20, is(true));
+		}
+	}
+
+	@Test
+	public void shouldFreeOldSlabsWhenGrowing() {
+		final long before = directMemoryUsed();
+		OffHeapMap<Long, Double> grown = new OffHeapMap<>(Long.class,
+				Double.class);
+		for (long i = 0; i < 100000; i++) {
+			grown.put(i, 1.0);
+		}
+		// only the current slabs, the smaller ones were freed as it grew
+		assertThat(directMemoryUsed() - before < grown.getOffHeapBytes()
+				+ (1 << 20), is(true));
+		grown.close();
+		assertThat(directMemoryUsed() - before < 1 << 20, is(true));
+	}
+
+	static long directMemoryUsed() {
+		for (BufferPoolMXBean pool : ManagementFactory
+				.getPlatformMXBeans(BufferPoolMXBean.class)) {
+			if (pool.getName().equals("direct")) {
+				return pool.getMemoryUsed();
+			}
+		}
+		throw new AssertionError("no direct buffer pool");
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void shouldRejectVariableWidthTypes() {
+		Factory.makeNewMap("offheap", String.class, Long.class);
+	}
+}
@@ -0,0 +1,72 @@
+package com.adamldavis.java.example;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class RosterGeneratorTest {
+
+	@Test
+	public void shouldRepeatForTheSameSeed() {
+		final RosterGenerator a = new RosterGenerator(7);
+		final RosterGenerator b = new RosterGenerator(7);
+		for (int i = 0; i < 1000; i++) {
+			assertThat(a.next(), equalTo(b.next()));
+		}
+		assertThat(a.withSeed(8).next(), equalTo(new RosterGenerator(8).next()));
+	}
+
+	@Test
+	public void shouldFollowTheSettings() {
+		final RosterGenerator roster = new RosterGenerator(1)
+				.setMissingGpaRate(0.2).setGpa(3.0, 0.5)
+				.setTypeWeights(0, 1, 1, 2);
+		final int n = 100000;
+		int missing = 0, liberalArts = 0;
+		double sum = 0;
+		for (int i = 0; i < n; i++) {
+			final Student student = roster.next();
+			if (student.gpa.isEmpty()) {
+				missing++;
+			} else {
+				final double gpa = student.gpa.otherwise(0d);
+				assertTrue(gpa >= 0 && gpa <= 4);
+				sum += gpa;
+			}
+			assertTrue(student.studentType != StudentType.PREMED);
+			if (student.studentType == StudentType.LIBERAL_ARTS) {
+				liberalArts++;
+			}
+		}
+		assertEquals(0.2, missing / (double) n, 0.01);
+		assertEquals(0.5, liberalArts / (double) n, 0.01);
+		assertEquals(3.0, sum / (n - missing), 0.02);
+	}
+
+	@Test
+	public void shouldRepeatNamesLikeZipf() {
+		final RosterGenerator roster = new RosterGenerator(3)
+				.setDistinctNames(1000, 1000).setZipfExponent(1.0);
+		final Map<String, Integer> counts = new HashMap<>();
+		final int n = 100000;
+		for (int i = 0; i < n; i++) {
+			final String name = roster.nextLastName();
+			final Integer count = counts.get(name);
+			counts.put(name, count == null ? 1 : count + 1);
+		}
+		final String[] names = RosterGenerator.names(1000, 1);
+		// 1/H(1000) of all names are the most common one, about 13%
+		assertEquals(0.134, counts.get(names[0]) / (double) n, 0.01);
+		// and the second is half as common
+		assertEquals(0.5, counts.get(names[1])
+				/ (double) counts.get(names[0]), 0.05);
+		assertThat(counts.size() <= 1000, is(true));
+	}
+}
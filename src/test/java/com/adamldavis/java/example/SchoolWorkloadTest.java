@@ -0,0 +1,44 @@
+package com.adamldavis.java.example;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import com.adamldavis.java.example.SchoolWorkload.Operation;
+
+public class SchoolWorkloadTest {
+
+	@Test
+	public void shouldRunTheMixOnAllThreads() throws Exception {
+		final StreamSchool school = new StreamSchool();
+		final SchoolWorkload.Result result = new SchoolWorkload(
+				new RosterGenerator(5)).setThreads(4).setOperations(2001)
+				.setMix(6, 2, 1, 1)
+				.run("stream", SchoolWorkload.target(school), 1000);
+
+		assertEquals(2001, result.getOperations());
+		assertEquals(0.6, result.histograms.get(Operation.FIND).getCount()
+				/ 2001d, 0.05);
+		final long added = result.histograms.get(Operation.ADD).getCount();
+		assertTrue(school.size() <= 1000 + added);
+		assertTrue(school.size() > 900 + added); // few exact duplicates
+		// every find and update looks up a preloaded student
+		assertEquals(result.histograms.get(Operation.FIND).getCount()
+				+ result.histograms.get(Operation.UPDATE).getCount(),
+				result.found);
+		assertTrue(result.getThroughput() > 0);
+	}
+
+	@Test
+	public void shouldOnlyFindWhenAskedTo() throws Exception {
+		final SchoolWorkload.Result result = new SchoolWorkload(
+				new RosterGenerator(5)).setThreads(2).setOperations(100)
+				.setMix(1, 0, 0, 0)
+				.run("finds", SchoolWorkload.target(new StreamSchool()), 10);
+
+		assertEquals(100, result.histograms.get(Operation.FIND).getCount());
+		assertEquals(0, result.histograms.get(Operation.ADD).getCount());
+		assertEquals(100, result.found);
+	}
+}
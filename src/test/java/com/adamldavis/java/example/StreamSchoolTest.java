@@ -0,0 +1,152 @@
+package com.adamldavis.java.example;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assume.assumeThat;
+
+import java.util.OptionalDouble;
+import java.util.Random;
+
+import org.bitbucket.dollar.lang.Maybe;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+
+public class StreamSchoolTest {
+
+	StreamSchool school;
+
+	@Before
+	public void setupSchool() throws MissingDataException {
+		school = new StreamSchool();
+		school.addStudent("John", "Doe", "PREMED");
+		school.addStudent("Jane", "Doe", StudentType.PRELAW, 4.0);
+		school.addStudent("Ruff", "Grade", StudentType.LIBERAL_ARTS, 2.2);
+		school.addStudent("Bob", "Wittier", StudentType.LIBERAL_ARTS, 3.5);
+		school.addStudent("Rob", "Smart", StudentType.LIBERAL_ARTS, 4.0);
+		school.addStudent("Matt", "Avera", StudentType.LIBERAL_ARTS, 3.0);
+		school.addStudent("Vera", "Blank", StudentType.SCIENCE, 3.2);
+	}
+
+	@After
+	public void nullifyAllTheThings() {
+		school = null;
+	}
+
+	@Test(expected = MissingDataException.class)
+	public void shouldThrowMissingDataExceptionOnName() throws MissingDataException {
+		school.addStudent(null, "doe", "PREMED");
+	}
+
+	@Test(expected = MissingDataException.class)
+	public void shouldThrowMissingDataExceptionOnLastName() throws MissingDataException {
+		school.addStudent("bob", null, "PREMED");
+	}
+
+	@Test(expected = MissingDataException.class)
+	public void shouldThrowMissingDataExceptionOnType() throws MissingDataException {
+		school.addStudent("bob", "foo", null);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void shouldThrowIllegalArgumentExceptionOnWrongType() throws Exception {
+		school.addStudent("bar", "foo", "FOOBAR");
+	}
+
+	@Test
+	public void testFindStudent() {
+		assertThat(school.findStudent("John", "Doe").isPresent(), is(true));
+	}
+
+	@Test
+	public void testRemoveStudent() {
+		assumeThat(school.findStudent("John", "Doe").isPresent(), is(true));
+		school.removeStudent("John", "Doe");
+		assertThat(school.findStudent("John", "Doe").isPresent(), is(false));
+	}
+
+	@Test
+	public void testUpdateStudentGpa() throws MissingDataException {
+		school.updateStudentGpa("Jane", "Doe", 3.8);
+		assertThat(school.findStudent("Jane", "Doe").get().gpa.otherwise(0d),
+				equalTo(3.8));
+	}
+
+	@Test
+	public void testGetHighestGPA() {
+		assertThat(school.getHighestGPA(), equalTo(OptionalDouble.of(4.0)));
+	}
+
+	@Test
+	public void testGetLowestGPA() {
+		assertThat(school.getLowestGPA(), equalTo(OptionalDouble.of(2.2)));
+	}
+
+	@Test
+	public void testGetAverageGPA() {
+		assertThat(school.getAverageGPA(), equalTo(OptionalDouble.of(3.31667)));
+	}
+
+	@Test
+	public void testGetStudentsWithNoGPA() {
+		assertThat(school.getStudentsWithNoGPA().get(0), equalTo(new Student(
+				"John", "Doe", StudentType.PREMED, Maybe
+						.theAbsenceOfA(Double.class))));
+	}
+
+	@Test
+	public void shouldKeepGpasInLineAfterRemoving() throws MissingDataException {
+		school.removeStudent("Ruff", "Grade");
+		school.updateStudentGpa("Rob", "Smart", 1.5);
+		assertThat(school.getLowestGPA(), equalTo(OptionalDouble.of(1.5)));
+		assertThat(school.getStudentsWithLowestGPA().get(0).firstName,
+				equalTo("Rob"));
+		assertThat(school.getStudentsWithHighestGPA().get(0).firstName,
+				equalTo("Jane"));
+		assertThat(school.getGpaStatistics().getCount(), is(5L));
+	}
+
+	@Test
+	public void shouldGet2Students() {
+		assertThat(school.getStudentsWithHighestGPA().size(), is(2));
+	}
+
+	@Test
+	public void shouldIgnoreDuplicateStudents() throws MissingDataException {
+		school.addStudent("Vera", "Blank", StudentType.SCIENCE, 3.2);
+		assertThat(school.size(), is(7));
+	}
+
+	@Test
+	public void shouldGetSameAnswersInParallel() throws MissingDataException {
+		final StreamSchool sequential = new StreamSchool(false);
+		final StreamSchool parallel = new StreamSchool(true);
+		final Random random = new Random(42);
+		for (int i = 0; i < StreamSchool.PARALLEL_THRESHOLD * 3; i++) {
+			final Double gpa = random.nextInt(10) == 0 ? null : random
+					.nextInt(401) / 100d;
+			sequential.addStudent("First" + i, "Last" + i,
+					StudentType.SCIENCE, gpa);
+			parallel.addStudent("First" + i, "Last" + i, StudentType.SCIENCE,
+					gpa);
+		}
+		assertThat(parallel.getAverageGPA(),
+				equalTo(sequential.getAverageGPA()));
+		assertThat(parallel.getHighestGPA(),
+				equalTo(sequential.getHighestGPA()));
+		assertThat(parallel.getLowestGPA(), equalTo(sequential.getLowestGPA()));
+		assertThat(parallel.getStudentsWithHighestGPA(),
+				equalTo(sequential.getStudentsWithHighestGPA()));
+		assertThat(parallel.getStudentsWithNoGPA(),
+				equalTo(sequential.getStudentsWithNoGPA()));
+		assertThat(parallel.findStudent("First29999", "Last29999"),
+				equalTo(sequential.findStudent("First29999", "Last29999")));
+
+		parallel.removeStudent("First12345", "Last12345");
+		assertThat(parallel.findStudent("First12345", "Last12345")
+				.isPresent(), is(false));
+		assertThat(parallel.size(), is(sequential.size() - 1));
+	}
+}
@@ -0,0 +1,78 @@
+package com.adamldavis.java.forkjoin;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+
+public class MappedReduceTest {
+
+	static final int COUNT = 300001;
+
+	ForkJoinPool pool = new ForkJoinPool(4);
+	Path file;
+
+	@Before
+	public void writeFile() throws IOException {
+		file = Files.createTempFile("numbers", ".bin");
+		ByteBuffer buf = ByteBuffer.allocate(COUNT * 8 + 3).order(
+				ByteOrder.LITTLE_ENDIAN);
+		for (long i = 0; i < COUNT; i++) {
+			buf.putLong(i * 1000000007L);
+		}
+		buf.put(new byte[3]).flip(); // a partial value at the end
+		try (FileChannel channel = FileChannel.open(file,
+				StandardOpenOption.WRITE)) {
+			channel.write(buf);
+		}
+	}
+
+	@After
+	public void deleteFile() throws IOException {
+		Files.delete(file);
+	}
+
+	@Test
+	public void shouldReduceLongs() throws IOException {
+		long sum = 0;
+		for (long i = 0; i < COUNT; i++) {
+			sum += i * 1000000007L;
+		}
+		assertThat(MappedReduce.reduce(pool, file, NumberType.LONG,
+				ByteOrder.LITTLE_ENDIAN, LongOps.SUM), equalTo(sum));
+		assertThat(MappedReduce.reduce(pool, file, NumberType.LONG,
+				ByteOrder.LITTLE_ENDIAN, LongOps.MAX),
+				equalTo((COUNT - 1) * 1000000007L));
+	}
+
+	@Test
+	public void shouldCountInts() throws IOException {
+		assertThat(MappedReduce.reduce(pool, file, NumberType.INT,
+				ByteOrder.LITTLE_ENDIAN, LongOps.COUNT),
+				equalTo(COUNT * 2L));
+	}
+
+	@Test
+	public void shouldMatchTheArrayReductionForInts() throws IOException {
+		int[] ints = new int[COUNT * 2];
+		ByteBuffer.wrap(Files.readAllBytes(file)).order(
+				ByteOrder.LITTLE_ENDIAN).asIntBuffer().get(ints);
+		for (LongOps op : LongOps.values()) {
+			assertThat(MappedReduce.reduce(pool, file, NumberType.INT,
+					ByteOrder.LITTLE_ENDIAN, op), equalTo(ParallelReduce
+					.reduce(pool, ints, op)));
+		}
+	}
+}
@@ -0,0 +1,157 @@
+package com.adamldavis.java.forkjoin;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Before;
+import org.junit.Test;
+
+
+public class ParallelReduceTest {
+
+	static final int LENGTH = 1000003;
+
+	ForkJoinPool pool = new ForkJoinPool(4);
+	int[] ints;
+	double[] doubles;
+
+	@Before
+	public void setupNumbers() {
+		Random random = new Random(42);
+		ints = new int[LENGTH];
+		doubles = new double[LENGTH];
+		for (int i = 0; i < LENGTH; i++) {
+			ints[i] = random.nextInt();
+			doubles[i] = random.nextInt(1000) / 4.0;
+		}
+	}
+
+	@Test
+	public void shouldSumIntsWithoutOverflow() {
+		long expected = 0;
+		for (int i : ints) {
+			expected += i;
+		}
+		assertThat(ParallelReduce.sum(pool, ints), equalTo(expected));
+	}
+
+	@Test
+	public void shouldReduceRanges() {
+		long min = Long.MAX_VALUE, max = Long.MIN_VALUE;
+		for (int i = 10; i < 500000; i++) {
+			min = Math.min(min, ints[i]);
+			max = Math.max(max, ints[i]);
+		}
+		assertThat(ParallelReduce.reduce(pool, ints, 10, 500000, LongOps.MIN),
+				equalTo(min));
+		assertThat(ParallelReduce.reduce(pool, ints, 10, 500000, LongOps.MAX),
+				equalTo(max));
+		assertThat(ParallelReduce.reduce(pool, ints, 10, 500000,
+				LongOps.COUNT), equalTo(499990L));
+	}
+
+	@Test
+	public void shouldReduceDoubles() {
+		double sum = 0; // quarters add up exactly, so order doesn't matter
+		for (double d : doubles) {
+			sum += d;
+		}
+		assertThat(ParallelReduce.sum(pool, doubles), equalTo(sum));
+		assertThat(ParallelReduce.reduce(pool, doubles, 0, 0, DoubleOps.MAX),
+				equalTo(Double.NEGATIVE_INFINITY));
+	}
+
+	@Test
+	public void unrolledKernelShouldMatchScalar() {
+		LeafKernel scalar = LeafKernel.SCALAR, unrolled = LeafKernel.UNROLLED;
+		for (int to : new int[] { 0, 1, 3, 4, 7, 1001 }) {
+			assertThat(unrolled.sum(ints, 0, to), equalTo(scalar.sum(ints, 0, to)));
+			assertThat(unrolled.min(ints, 0, to), equalTo(scalar.min(ints, 0, to)));
+			assertThat(unrolled.max(ints, 0, to), equalTo(scalar.max(ints, 0, to)));
+			assertThat(unrolled.dot(ints, ints, 0, to),
+					equalTo(scalar.dot(ints, ints, 0, to)));
+			long[] expected = new long[16], actual = new long[16];
+			scalar.histogram(ints, 0, to, -1000000, 1 << 28, expected);
+			unrolled.histogram(ints, 0, to, -1000000, 1 << 28, actual);
+			for (int b = 0; b < 16; b++) {
+				assertThat(actual[b], equalTo(expected[b]));
+			}
+		}
+	}
+
+	@Test
+	public void shouldComputeDotProducts() {
+		long expected = 0;
+		double expectedDoubles = 0; // quarters times quarters are exact too
+		for (int i = 0; i < LENGTH; i++) {
+			expected += (long) ints[i] * ints[i];
+			expectedDoubles += doubles[i] * doubles[i];
+		}
+		assertThat(ParallelReduce.dot(pool, ints, ints), equalTo(expected));
+		assertThat(ParallelReduce.dot(pool, doubles, doubles),
+				equalTo(expectedDoubles));
+	}
+
+	@Test
+	public void shouldCountHistogram() {
+		long[] expected = new long[16];
+		LeafKernel.SCALAR.histogram(ints, 5, LENGTH, -1000000, 1 << 28,
+				expected);
+		long[] counts = ParallelReduce.histogram(pool, ints, 5, LENGTH,
+				-1000000, 1 << 28, 16);
+		long total = 0;
+		for (int b = 0; b < 16; b++) {
+			assertThat(counts[b], equalTo(expected[b]));
+			total += counts[b];
+		}
+		assertThat(total, equalTo(LENGTH - 5L));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void shouldCheckDotLengths() {
+		ParallelReduce.dot(pool, ints, new int[LENGTH - 1]);
+	}
+
+	@Test
+	public void bufferKernelsShouldMatchArrays() {
+		IntBuffer intBuffer = IntBuffer.wrap(ints);
+		long[] longs = new long[1001];
+		for (int i = 0; i < longs.length; i++) {
+			longs[i] = ints[i] * 31L;
+		}
+		LongBuffer longBuffer = LongBuffer.wrap(longs);
+		for (LeafKernel kernel : new LeafKernel[] { LeafKernel.SCALAR,
+				LeafKernel.UNROLLED }) {
+			for (int to : new int[] { 0, 1, 3, 4, 7, 1001 }) {
+				for (LongOps op : LongOps.values()) {
+					assertThat(kernel.reduce(op, intBuffer, 0, to),
+							equalTo(kernel.reduce(op, ints, 0, to)));
+					assertThat(kernel.reduce(op, longBuffer, 0, to),
+							equalTo(kernel.reduce(op, longs, 0, to)));
+				}
+			}
+		}
+	}
+
+	@Test
+	public void shouldRecordStats() {
+		ForkJoinStats stats = ForkJoinStats.start(pool);
+		long sum = ParallelReduce.reduce(pool, ints, 0, LENGTH, LongOps.SUM,
+				stats);
+		stats.stop();
+		assertThat(sum, equalTo(ParallelReduce.sum(pool, ints)));
+		int leafSize = ParallelReduce.threshold(LENGTH, 4);
+		assertThat(stats.getLeaves() >= LENGTH / leafSize, equalTo(true));
+		assertThat(stats.getMaxDepth() > 0, equalTo(true));
+	}
+
+	@Test(expected = ArrayIndexOutOfBoundsException.class)
+	public void shouldCheckRange() {
+		ParallelReduce.reduce(pool, ints, 0, LENGTH + 1, LongOps.SUM);
+	}
+}
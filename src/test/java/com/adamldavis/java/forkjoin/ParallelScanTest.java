@@ -0,0 +1,108 @@
+package com.adamldavis.java.forkjoin;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Test;
+
+
+public class ParallelScanTest {
+
+	static final int LENGTH = 500009;
+
+	ForkJoinPool pool = new ForkJoinPool(4);
+
+	@Test
+	public void shouldComputeCumulativeSum() {
+		long[] numbers = new long[LENGTH];
+		for (int i = 0; i < LENGTH; i++) {
+			numbers[i] = i;
+		}
+		ParallelScan.cumulativeSum(pool, numbers);
+		for (long i = 0; i < LENGTH; i++) {
+			assertThat(numbers[(int) i], equalTo(i * (i + 1) / 2));
+		}
+	}
+
+	@Test
+	public void shouldScanRangeWithMax() {
+		Random random = new Random(7);
+		int[] numbers = new int[LENGTH];
+		for (int i = 0; i < LENGTH; i++) {
+			numbers[i] = random.nextInt();
+		}
+		int[] expected = numbers.clone();
+		for (int i = 101; i < LENGTH - 5; i++) {
+			expected[i] = Math.max(expected[i - 1], expected[i]);
+		}
+		ParallelScan.scan(pool, numbers, 100, LENGTH - 5, LongOps.MAX);
+		for (int i = 0; i < LENGTH; i++) {
+			assertThat(numbers[i], equalTo(expected[i]));
+		}
+	}
+
+	@Test
+	public void shouldComputeRunningCount() {
+		double[] numbers = new double[LENGTH];
+		ParallelScan.scan(pool, numbers, DoubleOps.COUNT);
+		for (int i = 0; i < LENGTH; i++) {
+			assertThat(numbers[i], equalTo(i + 1.0));
+		}
+	}
+
+	@Test
+	public void shouldNotJumpAtLeafBoundaries() {
+		Random random = new Random(3);
+		double[] numbers = new double[LENGTH];
+		for (int i = 0; i < LENGTH; i++) {
+			numbers[i] = random.nextDouble();
+		}
+		double[] sequential = numbers.clone();
+		for (int i = 1; i < LENGTH; i++) {
+			sequential[i] += sequential[i - 1];
+		}
+		ParallelScan.cumulativeSum(pool, numbers);
+		for (int i = 1; i < LENGTH; i++) {
+			assertThat(numbers[i] > numbers[i - 1], equalTo(true));
+		}
+		assertThat(Math.abs(numbers[LENGTH - 1] - sequential[LENGTH - 1])
+				< 1e-6, equalTo(true));
+	}
+
+	@Test
+	public void shouldContinueExactlyAcrossLeavesOfDeepTree() {
+		Random random = new Random(5);
+		double[] original = new double[LENGTH];
+		for (int i = 0; i < LENGTH; i++) {
+			original[i] = random.nextDouble() * 1000;
+		}
+		double[] numbers = original.clone();
+		// tiny leaves, so the tree is about 15 levels deep
+		ParallelScan.DoubleUpSweep root = new ParallelScan.DoubleUpSweep(
+				numbers, 0, LENGTH, DoubleOps.SUM, 16);
+		pool.invoke(root);
+		pool.invoke(new ParallelScan.DoubleDownSweep(root, 0));
+		List<ParallelScan.DoubleUpSweep> leaves = new ArrayList<>();
+		collectLeaves(root, leaves);
+		assertThat(leaves.size() > 1 << 14, equalTo(true));
+		for (ParallelScan.DoubleUpSweep leaf : leaves.subList(1, leaves.size())) {
+			final int i = leaf.from;
+			assertThat(numbers[i], equalTo(numbers[i - 1] + original[i]));
+		}
+	}
+
+	static void collectLeaves(ParallelScan.DoubleUpSweep node,
+			List<ParallelScan.DoubleUpSweep> leaves) {
+		if (node.left == null) {
+			leaves.add(node);
+		} else {
+			collectLeaves(node.left, leaves);
+			collectLeaves(node.right, leaves);
+		}
+	}
+}
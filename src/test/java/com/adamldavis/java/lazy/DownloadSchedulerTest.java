@@ -0,0 +1,202 @@
+package com.adamldavis.java.lazy;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+public class DownloadSchedulerTest {
+
+	HttpServer server;
+	String base;
+	DownloadScheduler scheduler;
+	final AtomicInteger running = new AtomicInteger();
+	final AtomicInteger maxRunning = new AtomicInteger();
+	final AtomicInteger flakyCalls = new AtomicInteger();
+	final CountDownLatch unblock = new CountDownLatch(1);
+	final List<String> order = Collections.synchronizedList(new ArrayList<String>());
+
+	@Before
+	public void startServer() throws IOException {
+		server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		server.setExecutor(Executors.newCachedThreadPool());
+		server.createContext("/slow", new HttpHandler() {
+			public void handle(HttpExchange exchange) throws IOException {
+				final int now = running.incrementAndGet();
+				maxRunning.accumulateAndGet(now, Math::max);
+				sleep(50);
+				running.decrementAndGet();
+				FetchEngineTest.respond(exchange, 200, "slow", 4);
+			}
+		});
+		server.createContext("/flaky", new HttpHandler() {
+			public void handle(HttpExchange exchange) throws IOException {
+				if (flakyCalls.incrementAndGet() < 3) {
+					FetchEngineTest.respond(exchange, 503, "busy", 4);
+				} else {
+					FetchEngineTest.respond(exchange, 200, "ok", 2);
+				}
+			}
+		});
+		server.createContext("/missing", new HttpHandler() {
+			public void handle(HttpExchange exchange) throws IOException {
+				FetchEngineTest.respond(exchange, 404, "gone", 4);
+			}
+		});
+		server.createContext("/blocked", new HttpHandler() {
+			public void handle(HttpExchange exchange) throws IOException {
+				try {
+					unblock.await(5, TimeUnit.SECONDS);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				FetchEngineTest.respond(exchange, 200, "late", 4);
+			}
+		});
+		server.createContext("/order", new HttpHandler() {
+			public void handle(HttpExchange exchange) throws IOException {
+				order.add(exchange.getRequestURI().getQuery());
+				FetchEngineTest.respond(exchange, 200, "ok", 2);
+			}
+		});
+		server.start();
+		base = "http://localhost:" + server.getAddress().getPort();
+	}
+
+	@After
+	public void stopServer() {
+		unblock.countDown();
+		scheduler.close();
+		server.stop(0);
+	}
+
+	static Downloader fetcher() {
+		return new Downloader() {
+			public void download() {
+			}
+		};
+	}
+
+	static void sleep(long millis) {
+		try {
+			Thread.sleep(millis);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	@Test
+	public void shouldCapConnectionsPerHost() {
+		scheduler = new DownloadScheduler(fetcher(), 8, 2, 1, 10);
+		List<CompletableFuture<String>> results = new ArrayList<>();
+		for (int i = 0; i < 10; i++) {
+			results.add(scheduler.submit(base + "/slow", 0, 5000));
+		}
+		for (CompletableFuture<String> result : results) {
+			assertThat(result.join(), equalTo("slow"));
+		}
+		assertThat(maxRunning.get(), is(2));
+		DownloadScheduler.HostStats stats = scheduler.getHostStats().get(
+				"localhost");
+		assertThat(stats.completed, is(10L));
+		assertThat(stats.queued, is(0));
+	}
+
+	@Test
+	public void shouldRetryServerErrors() {
+		scheduler = new DownloadScheduler(fetcher(), 2, 2, 3, 10);
+		assertThat(scheduler.submit(base + "/flaky", 0, 5000).join(),
+				equalTo("ok"));
+		assertThat(scheduler.getHostStats().get("localhost").retries, is(2L));
+	}
+
+	@Test
+	public void shouldNotRetryClientErrors() {
+		scheduler = new DownloadScheduler(fetcher(), 2, 2, 3, 10);
+		try {
+			scheduler.submit(base + "/missing", 0, 5000).join();
+			throw new AssertionError("no exception");
+		} catch (CompletionException e) {
+			assertThat(((FetchException) e.getCause()).status, is(404));
+		}
+		assertThat(scheduler.getHostStats().get("localhost").retries, is(0L));
+	}
+
+	@Test
+	public void shouldTimeOutAtDeadline() {
+		scheduler = new DownloadScheduler(fetcher(), 2, 1, 1, 10);
+		CompletableFuture<String> running = scheduler.submit(
+				base + "/blocked", 0, 200);
+		CompletableFuture<String> queued = scheduler.submit(base + "/slow",
+				0, 200);
+		for (CompletableFuture<String> result : Arrays.asList(running, queued)) {
+			try {
+				result.join();
+				throw new AssertionError("no exception");
+			} catch (CompletionException e) {
+				assertThat(((FetchException) e.getCause()).kind,
+						is(FetchException.Kind.TIMEOUT));
+			}
+		}
+		assertThat(scheduler.getHostStats().get("localhost").timedOut, is(2L));
+	}
+
+	@Test
+	public void shouldCountExpiredFetchOnlyOnce() {
+		scheduler = new DownloadScheduler(fetcher(), 1, 1, 1, 10);
+		CompletableFuture<String> stalled = scheduler.submit(
+				base + "/blocked", 0, 100);
+		try {
+			stalled.join();
+			throw new AssertionError("no exception");
+		} catch (CompletionException e) {
+			assertThat(((FetchException) e.getCause()).kind,
+					is(FetchException.Kind.TIMEOUT));
+		}
+		unblock.countDown(); // now the fetch itself succeeds
+		DownloadScheduler.HostStats stats;
+		while ((stats = scheduler.getHostStats().get("localhost")).active > 0) {
+			sleep(10);
+		}
+		assertThat(stats.timedOut, is(1L));
+		assertThat(stats.completed, is(0L));
+		assertThat(stats.failed, is(0L));
+	}
+
+	@Test
+	public void shouldRunHigherPriorityFirst() {
+		scheduler = new DownloadScheduler(fetcher(), 1, 1, 1, 10);
+		CompletableFuture<String> blocker = scheduler.submit(base
+				+ "/blocked", 0, 5000);
+		sleep(100); // so the blocker has the only worker
+		CompletableFuture<String> low = scheduler.submit(base + "/order?low",
+				0, 5000);
+		CompletableFuture<String> high = scheduler.submit(base
+				+ "/order?high", 5, 5000);
+		unblock.countDown();
+		blocker.join();
+		low.join();
+		high.join();
+		assertThat(order, equalTo(Arrays.asList("high", "low")));
+	}
+}
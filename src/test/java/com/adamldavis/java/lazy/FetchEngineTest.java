@@ -0,0 +1,263 @@
+package com.adamldavis.java.lazy;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+
+public class FetchEngineTest {
+
+	static final byte[] BIG = new byte[3 * 1024 * 1024 + 17];
+	static {
+		for (int i = 0; i < BIG.length; i++) {
+			BIG[i] = (byte) (i * 31);
+		}
+	}
+
+	HttpServer server;
+	FetchEngine engine;
+	String base;
+
+	@Before
+	public void startServer() throws IOException {
+		server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		server.createContext("/fixed", new HttpHandler() {
+			public void handle(HttpExchange exchange) throws IOException {
+				respond(exchange, 200, "hello", "hello".length());
+			}
+		});
+		server.createContext("/chunked", new HttpHandler() {
+			public void handle(HttpExchange exchange) throws IOException {
+				respond(exchange, 200, "chunky", 0);
+			}
+		});
+		server.createContext("/redirect", new HttpHandler() {
+			public void handle(HttpExchange exchange) throws IOException {
+				exchange.getResponseHeaders().add("Location", "/fixed");
+				respond(exchange, 302, "moved", 5);
+			}
+		});
+		server.createContext("/slow", new HttpHandler() {
+			public void handle(HttpExchange exchange) throws IOException {
+				try {
+					Thread.sleep(1000);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				respond(exchange, 200, "late", 4);
+			}
+		});
+		server.createContext("/big", new HttpHandler() {
+			public void handle(HttpExchange exchange) throws IOException {
+				exchange.sendResponseHeaders(200, 0);
+				try (OutputStream out = exchange.getResponseBody()) {
+					out.write(BIG);
+				}
+			}
+		});
+		server.createContext("/latin", new HttpHandler() {
+			public void handle(HttpExchange exchange) throws IOException {
+				exchange.getResponseHeaders().add("Content-Type",
+						"text/plain; charset=ISO-8859-1");
+				final byte[] body = "caf\u00e9".getBytes("ISO-8859-1");
+				exchange.sendResponseHeaders(200, body.length);
+				try (OutputStream out = exchange.getResponseBody()) {
+					out.write(body);
+				}
+			}
+		});
+		server.createContext("/gzip", new HttpHandler() {
+			public void handle(HttpExchange exchange) throws IOException {
+				// two members, which is still one valid gzip body
+				sendEncoded(exchange, "gzip", concat(gzip(TEXT, 0, 1000),
+						gzip(TEXT, 1000, TEXT.length - 1000)));
+			}
+		});
+		server.createContext("/deflate", new HttpHandler() {
+			public void handle(HttpExchange exchange) throws IOException {
+				final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+				try (OutputStream out = new DeflaterOutputStream(bytes)) {
+					out.write(TEXT);
+				}
+				sendEncoded(exchange, "deflate", bytes.toByteArray());
+			}
+		});
+		server.createContext("/corrupt", new HttpHandler() {
+			public void handle(HttpExchange exchange) throws IOException {
+				final byte[] body = gzip(TEXT, 0, TEXT.length);
+				body[body.length - 8] ^= 1; // the CRC
+				sendEncoded(exchange, "gzip", body);
+			}
+		});
+		server.createContext("/missing", new HttpHandler() {
+			public void handle(HttpExchange exchange) throws IOException {
+				respond(exchange, 404, "gone", 4);
+			}
+		});
+		server.start();
+		base = "http://localhost:" + server.getAddress().getPort();
+		engine = new FetchEngine(new HttpConnectionPool(), 1000, 300);
+	}
+
+	@After
+	public void stopServer() {
+		engine.close();
+		server.stop(0);
+	}
+
+	static final byte[] TEXT = LocalHttpServer.text(100000);
+
+	static byte[] gzip(byte[] data, int off, int len) throws IOException {
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (OutputStream out = new GZIPOutputStream(bytes)) {
+			out.write(data, off, len);
+		}
+		return bytes.toByteArray();
+	}
+
+	static byte[] concat(byte[] a, byte[] b) {
+		final byte[] both = Arrays.copyOf(a, a.length + b.length);
+		System.arraycopy(b, 0, both, a.length, b.length);
+		return both;
+	}
+
+	static void sendEncoded(HttpExchange exchange, String encoding,
+			byte[] body) throws IOException {
+		exchange.getResponseHeaders().add("Content-Encoding", encoding);
+		exchange.sendResponseHeaders(200, body.length);
+		try (OutputStream out = exchange.getResponseBody()) {
+			out.write(body);
+		}
+	}
+
+	static void respond(HttpExchange exchange, int status, String body,
+			long length) throws IOException {
+		exchange.sendResponseHeaders(status, length);
+		try (OutputStream out = exchange.getResponseBody()) {
+			out.write(body.getBytes("UTF-8"));
+		}
+	}
+
+	@Test
+	public void shouldReuseConnection() throws IOException {
+		for (int i = 0; i < 5; i++) {
+			HttpResponse response = engine.get(base + "/fixed");
+			assertThat(response.status, is(200));
+			assertThat(new String(response.body, "UTF-8"), equalTo("hello"));
+		}
+		assertThat(engine.getPool().getOpened(), is(1L));
+		assertThat(engine.getPool().getReused(), is(4L));
+		assertThat(engine.getPool().getIdle(), is(1));
+	}
+
+	@Test
+	public void shouldReadChunkedBodyAndReuse() throws IOException {
+		assertThat(new String(engine.get(base + "/chunked").body, "UTF-8"),
+				equalTo("chunky"));
+		assertThat(new String(engine.get(base + "/chunked").body, "UTF-8"),
+				equalTo("chunky"));
+		assertThat(engine.getPool().getOpened(), is(1L));
+	}
+
+	@Test
+	public void shouldFollowRedirect() throws IOException {
+		HttpResponse response = engine.get(base + "/redirect");
+		assertThat(response.status, is(200));
+		assertThat(response.url.getPath(), equalTo("/fixed"));
+		assertThat(engine.getRequests(), is(2L));
+	}
+
+	@Test(expected = SocketTimeoutException.class)
+	public void shouldTimeOut() throws IOException {
+		engine.get(base + "/slow");
+	}
+
+	@Test
+	public void shouldStreamToFile() throws IOException {
+		Path file = Files.createTempFile("fetch", ".bin");
+		try {
+			for (int i = 0; i < 3; i++) {
+				long written = engine.stream(base + "/big", new FileSink(file));
+				assertThat(written, is((long) BIG.length));
+				assertThat(Arrays.equals(Files.readAllBytes(file), BIG), is(true));
+			}
+		} finally {
+			Files.delete(file);
+		}
+		assertThat(engine.getPool().getOpened(), is(1L));
+	}
+
+	@Test
+	public void shouldStreamThroughPooledBuffers() throws IOException {
+		for (int i = 0; i < 3; i++) {
+			assertThat(engine.stream(base + "/big", new TextSink()),
+					equalTo(new String(BIG, "UTF-8")));
+		}
+		assertThat(engine.getBuffers().getAllocated(), is(1L));
+	}
+
+	@Test
+	public void shouldDecodeWithResponseCharset() throws IOException {
+		assertThat(engine.stream(base + "/latin", new TextSink()),
+				equalTo("caf\u00e9"));
+	}
+
+	@Test
+	public void shouldNotStreamErrors() throws IOException {
+		try {
+			engine.stream(base + "/missing", new TextSink());
+		} catch (FetchException e) {
+			assertThat(e.kind, is(FetchException.Kind.HTTP_STATUS));
+			assertThat(e.status, is(404));
+			return;
+		}
+		throw new AssertionError("no exception");
+	}
+
+	@Test
+	public void shouldDecodeGzipAndDeflate() throws IOException {
+		for (int i = 0; i < 3; i++) {
+			for (String path : new String[] { "/gzip", "/deflate" }) {
+				HttpResponse response = engine.get(base + path);
+				assertThat(Arrays.equals(response.body, TEXT), is(true));
+				assertThat(response.header("content-encoding"), is((String) null));
+			}
+		}
+		assertThat(engine.getBytesDecoded(), is(6L * TEXT.length));
+		assertThat(engine.getBytesOnWire() < engine.getBytesDecoded() / 2,
+				is(true));
+		assertThat(engine.getInflaters().getCreated(), is(1L));
+		assertThat(engine.getPool().getOpened(), is(1L));
+	}
+
+	@Test
+	public void shouldStreamGzipToSink() throws IOException {
+		assertThat(engine.stream(base + "/gzip", new TextSink()),
+				equalTo(new String(TEXT, "US-ASCII")));
+	}
+
+	@Test(expected = ZipException.class)
+	public void shouldCheckGzipCrc() throws IOException {
+		engine.get(base + "/corrupt");
+	}
+}
@@ -0,0 +1,205 @@
+package com.adamldavis.java.lazy;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+public class HttpCacheTest {
+
+	HttpServer server;
+	FetchEngine engine;
+	String base;
+	Path directory;
+	final AtomicInteger bodiesSent = new AtomicInteger();
+	final AtomicBoolean turnedPrivate = new AtomicBoolean();
+
+	@Before
+	public void startServer() throws IOException {
+		server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		server.createContext("/fresh", new HttpHandler() {
+			public void handle(HttpExchange exchange) throws IOException {
+				exchange.getResponseHeaders().add("Cache-Control",
+						"public, max-age=60");
+				send(exchange, "fresh");
+			}
+		});
+		server.createContext("/etag", new HttpHandler() {
+			public void handle(HttpExchange exchange) throws IOException {
+				exchange.getResponseHeaders().add("Cache-Control", "no-cache");
+				exchange.getResponseHeaders().add("ETag", "\"v1\"");
+				if ("\"v1\"".equals(exchange.getRequestHeaders().getFirst(
+						"If-None-Match"))) {
+					exchange.sendResponseHeaders(304, -1);
+					exchange.close();
+				} else {
+					send(exchange, "tagged");
+				}
+			}
+		});
+		server.createContext("/nostore", new HttpHandler() {
+			public void handle(HttpExchange exchange) throws IOException {
+				exchange.getResponseHeaders().add("Cache-Control",
+						"no-store, max-age=60");
+				send(exchange, "secret");
+			}
+		});
+		server.createContext("/turns-private", new HttpHandler() {
+			public void handle(HttpExchange exchange) throws IOException {
+				if (turnedPrivate.getAndSet(true)) {
+					exchange.getResponseHeaders().add("Cache-Control",
+							"no-store");
+					send(exchange, "private");
+				} else {
+					exchange.getResponseHeaders().add("Cache-Control",
+							"no-cache");
+					exchange.getResponseHeaders().add("ETag", "\"v1\"");
+					send(exchange, "public");
+				}
+			}
+		});
+		server.start();
+		base = "http://localhost:" + server.getAddress().getPort();
+		engine = new FetchEngine(new HttpConnectionPool(), 1000, 1000);
+		directory = Files.createTempDirectory("http-cache");
+	}
+
+	@After
+	public void stopServer() throws IOException {
+		engine.close();
+		server.stop(0);
+		new HttpCache(directory, 1).clear();
+		Files.delete(directory);
+	}
+
+	void send(HttpExchange exchange, String body) throws IOException {
+		bodiesSent.incrementAndGet();
+		FetchEngineTest.respond(exchange, 200, body, body.length());
+	}
+
+	@Test
+	public void shouldServeFreshResponsesFromMemory() throws IOException {
+		HttpCache cache = new HttpCache(directory, 10);
+		for (int i = 0; i < 3; i++) {
+			HttpResponse response = cache.get(engine, base + "/fresh");
+			assertThat(new String(response.body, "UTF-8"), equalTo("fresh"));
+		}
+		assertThat(bodiesSent.get(), is(1));
+		assertThat(cache.getMisses(), is(1L));
+		assertThat(cache.getHits(), is(2L));
+	}
+
+	@Test
+	public void shouldRevalidateWithETag() throws IOException {
+		HttpCache cache = new HttpCache(directory, 10);
+		for (int i = 0; i < 3; i++) {
+			HttpResponse response = cache.get(engine, base + "/etag");
+			assertThat(response.status, is(200));
+			assertThat(new String(response.body, "UTF-8"), equalTo("tagged"));
+		}
+		assertThat(bodiesSent.get(), is(1));
+		assertThat(cache.getRevalidations(), is(2L));
+		assertThat(cache.getNotModified(), is(2L));
+	}
+
+	@Test
+	public void shouldReadFromDisk() throws IOException {
+		new HttpCache(directory, 10).get(engine, base + "/fresh");
+		HttpCache restarted = new HttpCache(directory, 10);
+		HttpResponse response = restarted.get(engine, base + "/fresh");
+		assertThat(new String(response.body, "UTF-8"), equalTo("fresh"));
+		assertThat(response.header("cache-control"),
+				equalTo("public, max-age=60"));
+		assertThat(bodiesSent.get(), is(1));
+		assertThat(restarted.getDiskReads(), is(1L));
+		assertThat(restarted.getHits(), is(1L));
+	}
+
+	@Test
+	public void shouldNotStoreNoStore() throws IOException {
+		HttpCache cache = new HttpCache(directory, 10);
+		cache.get(engine, base + "/nostore");
+		cache.get(engine, base + "/nostore");
+		assertThat(bodiesSent.get(), is(2));
+		assertThat(cache.getMisses(), is(2L));
+	}
+
+	@Test
+	public void shouldEvictLeastRecentlyUsed() throws IOException {
+		HttpCache cache = new HttpCache(null, 1);
+		cache.get(engine, base + "/fresh");
+		cache.get(engine, base + "/etag");
+		cache.get(engine, base + "/fresh");
+		assertThat(cache.getEvictions(), is(2L));
+		assertThat(cache.getMisses(), is(3L));
+	}
+
+	@Test
+	public void shouldForgetOnDiskWhenNoLongerStorable() throws IOException {
+		HttpCache cache = new HttpCache(directory, 10);
+		cache.get(engine, base + "/turns-private");
+		assertThat(files(), is(1L));
+		HttpResponse response = cache.get(engine, base + "/turns-private");
+		assertThat(new String(response.body, "UTF-8"), equalTo("private"));
+		assertThat(files(), is(0L));
+
+		HttpCache restarted = new HttpCache(directory, 10);
+		assertThat(restarted.getDiskReads(), is(0L));
+	}
+
+	@Test
+	public void shouldBoundTheDisk() throws IOException {
+		HttpCache cache = new HttpCache(directory, 1, 10);
+		for (int i = 0; i < 25; i++) {
+			cache.get(engine, base + "/fresh?page=" + i);
+		}
+		assertThat(files() <= 10, is(true));
+		assertThat(cache.getDiskEvictions() >= 15, is(true));
+	}
+
+	@Test
+	public void shouldClearTemporaryFiles() throws IOException {
+		HttpCache cache = new HttpCache(directory, 10);
+		cache.get(engine, base + "/fresh");
+		Files.createTempFile(directory, "left-over", ".tmp");
+		cache.clear();
+		try (Stream<Path> all = Files.list(directory)) {
+			assertThat(all.count(), is(0L));
+		}
+	}
+
+	@Test
+	public void shouldServeWhenTheDiskFails() throws IOException {
+		// a file where the directory should be, so every save fails
+		Path notADirectory = Files.createTempFile(directory, "blocked", ".tmp");
+		HttpCache cache = new HttpCache(notADirectory, 10);
+		for (int i = 0; i < 2; i++) {
+			HttpResponse response = cache.get(engine, base + "/fresh");
+			assertThat(new String(response.body, "UTF-8"), equalTo("fresh"));
+		}
+		assertThat(bodiesSent.get(), is(1));
+		assertThat(cache.getHits(), is(1L));
+		assertThat(cache.getDiskErrors(), is(1L));
+	}
+
+	long files() throws IOException {
+		try (Stream<Path> all = Files.list(directory)) {
+			return all.filter(f -> f.toString().endsWith(".entry")).count();
+		}
+	}
+}
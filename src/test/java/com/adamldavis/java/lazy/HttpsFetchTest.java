@@ -0,0 +1,97 @@
+package com.adamldavis.java.lazy;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.security.KeyStore;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLHandshakeException;
+import javax.net.ssl.TrustManagerFactory;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpsConfigurator;
+import com.sun.net.httpserver.HttpsServer;
+
+
+public class HttpsFetchTest {
+
+	static final char[] PASSWORD = "changeit".toCharArray();
+
+	HttpsServer server;
+	FetchEngine engine;
+
+	@After
+	public void stopServer() {
+		if (engine != null) {
+			engine.close();
+		}
+		if (server != null) {
+			server.stop(0);
+		}
+	}
+
+	@Test
+	public void shouldFetchFromHostNamedInCertificate() throws Exception {
+		final String url = start("localhost.p12");
+		assertThat(new String(engine.get(url).body, "UTF-8"), equalTo("secure"));
+	}
+
+	@Test
+	public void shouldRejectCertificateForAnotherHost() throws Exception {
+		// trusted, but issued for other.example rather than localhost
+		final String url = start("other.example.p12");
+		try {
+			engine.get(url);
+			fail("accepted a certificate for other.example");
+		} catch (SSLHandshakeException e) {
+			assertThat(engine.getPool().getOpened(), is(0L));
+		}
+	}
+
+	// serves over TLS with the keystore's certificate and makes an engine
+	// that trusts only that certificate
+	String start(String keystore) throws Exception {
+		final KeyStore keys = KeyStore.getInstance("PKCS12");
+		try (InputStream in = getClass().getResourceAsStream(keystore)) {
+			keys.load(in, PASSWORD);
+		}
+		final KeyManagerFactory kmf = KeyManagerFactory
+				.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+		kmf.init(keys, PASSWORD);
+		final TrustManagerFactory tmf = TrustManagerFactory
+				.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+		tmf.init(keys);
+		final SSLContext serverContext = SSLContext.getInstance("TLS");
+		serverContext.init(kmf.getKeyManagers(), null, null);
+		final SSLContext clientContext = SSLContext.getInstance("TLS");
+		clientContext.init(null, tmf.getTrustManagers(), null);
+
+		server = HttpsServer.create(new InetSocketAddress("localhost", 0), 0);
+		server.setHttpsConfigurator(new HttpsConfigurator(serverContext));
+		server.createContext("/", new HttpHandler() {
+			public void handle(HttpExchange exchange) throws IOException {
+				final byte[] body = "secure".getBytes("UTF-8");
+				exchange.sendResponseHeaders(200, body.length);
+				try (OutputStream out = exchange.getResponseBody()) {
+					out.write(body);
+				}
+			}
+		});
+		server.start();
+		engine = new FetchEngine(new HttpConnectionPool(8, 30000,
+				clientContext.getSocketFactory()), 1000, 1000);
+		return "https://localhost:" + server.getAddress().getPort() + "/";
+	}
+}
@@ -0,0 +1,72 @@
+package com.adamldavis.java.lazy;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class LatencyHistogramTest {
+
+	@Test
+	public void shouldBeExactForSmallValues() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		for (int i = 1; i <= 100; i++) {
+			histogram.record(i);
+		}
+		assertThat(histogram.getPercentile(50), is(50L));
+		assertThat(histogram.getPercentile(99), is(99L));
+		assertThat(histogram.getPercentile(100), is(100L));
+		assertThat(histogram.getMin(), is(1L));
+		assertTrue(histogram.getMean() == 50.5);
+	}
+
+	@Test
+	public void shouldBeWithinOnePercent() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		for (long i = 1; i <= 1000000; i++) {
+			histogram.record(i * 1000);
+		}
+		assertClose(histogram.getPercentile(50), 500000000L);
+		assertClose(histogram.getPercentile(99), 990000000L);
+		assertClose(histogram.getPercentile(99.9), 999000000L);
+		assertThat(histogram.getMax(), is(1000000000L));
+	}
+
+	@Test
+	public void shouldCoverEveryLong() {
+		for (long value : new long[] { 0, 127, 128, 255, 256, 1L << 40,
+				Long.MAX_VALUE }) {
+			int bucket = LatencyHistogram.bucket(value);
+			assertTrue(LatencyHistogram.highest(bucket) >= value);
+			assertTrue(bucket == 0
+					|| LatencyHistogram.highest(bucket - 1) < value);
+		}
+	}
+
+	@Test
+	public void shouldKeepEveryBucketWithinOnePercent() {
+		for (long value = 256; value < 1L << 20; value++) {
+			long highest = LatencyHistogram.highest(LatencyHistogram
+					.bucket(value));
+			assertClose(highest, value);
+		}
+	}
+
+	@Test
+	public void shouldAdd() {
+		LatencyHistogram a = new LatencyHistogram();
+		LatencyHistogram b = new LatencyHistogram();
+		a.record(10);
+		b.record(1000);
+		a.add(b);
+		assertThat(a.getCount(), is(2L));
+		assertThat(a.getMin(), is(10L));
+		assertThat(a.getMax(), is(1000L));
+	}
+
+	static void assertClose(long actual, long expected) {
+		assertTrue(actual + " is not close to " + expected,
+				Math.abs(actual - expected) <= expected / 100);
+	}
+}
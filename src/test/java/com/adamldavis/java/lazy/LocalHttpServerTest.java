@@ -0,0 +1,54 @@
+package com.adamldavis.java.lazy;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.Collections;
+
+import org.junit.Test;
+
+public class LocalHttpServerTest {
+
+	@Test
+	public void shouldDelayAndThrottle() throws IOException {
+		try (LocalHttpServer server = new LocalHttpServer(100, 100000, 20000);
+				FetchEngine engine = new FetchEngine()) {
+			engine.setCompression(false);
+			long start = System.nanoTime();
+			HttpResponse response = engine.get(server.urls(1)[0]);
+			long millis = (System.nanoTime() - start) / 1000000;
+			assertThat(response.body.length, is(20000));
+			// 100ms latency plus 200ms to send 20000 bytes at 100000 a second
+			assertTrue(millis + "ms", millis >= 290 && millis < 2000);
+			assertThat(engine.get(server.urls(1)[0] + "?bytes=10").body.length,
+					is(10));
+		}
+	}
+
+	@Test
+	public void shouldCompressWhenAccepted() throws IOException {
+		try (LocalHttpServer server = new LocalHttpServer(0, 0, 50000);
+				FetchEngine engine = new FetchEngine()) {
+			HttpResponse response = engine.get(server.urls(1)[0]);
+			assertThat(response.body.length, is(50000));
+			assertTrue(server.getBytesSent() < 50000 / 2);
+			assertThat(engine.getBytesOnWire(), is(server.getBytesSent()));
+		}
+	}
+
+	@Test
+	public void shouldAnswerMatchingETagWithNotModified() throws IOException {
+		try (LocalHttpServer server = new LocalHttpServer(0, 0, 100);
+				FetchEngine engine = new FetchEngine()) {
+			String url = server.urls(2)[1];
+			HttpResponse first = engine.get(url);
+			HttpResponse second = engine.get(url,
+					Collections.singletonMap("If-None-Match",
+							first.header("etag")));
+			assertThat(second.status, is(304));
+			assertThat(server.getNotModified(), is(1L));
+		}
+	}
+}
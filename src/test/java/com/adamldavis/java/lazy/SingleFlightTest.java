@@ -0,0 +1,87 @@
+package com.adamldavis.java.lazy;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+public class SingleFlightTest {
+
+	final AtomicInteger calls = new AtomicInteger();
+
+	SingleFlight.Call<String> counting() {
+		return () -> "result " + calls.incrementAndGet();
+	}
+
+	@Test
+	public void shouldShareInFlightCall() throws Exception {
+		final SingleFlight<String, String> flights = new SingleFlight<>();
+		final CountDownLatch started = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		final ExecutorService pool = Executors.newFixedThreadPool(8);
+		try {
+			final List<Future<String>> results = new ArrayList<>();
+			results.add(pool.submit(() -> flights.execute("a", () -> {
+				started.countDown();
+				try {
+					release.await(5, TimeUnit.SECONDS);
+				} catch (InterruptedException e) {
+					throw new InterruptedIOException();
+				}
+				return "result " + calls.incrementAndGet();
+			})));
+			started.await();
+			for (int i = 0; i < 7; i++) {
+				results.add(pool.submit(() -> flights.execute("a", counting())));
+			}
+			while (flights.getShared() < 7) {
+				Thread.sleep(1);
+			}
+			release.countDown();
+			for (Future<String> result : results) {
+				assertThat(result.get(), equalTo("result 1"));
+			}
+		} finally {
+			pool.shutdownNow();
+		}
+		assertThat(flights.getExecutions(), is(1L));
+		// nothing is kept afterwards without a reuse window
+		assertThat(flights.execute("a", counting()), equalTo("result 2"));
+	}
+
+	@Test
+	public void shouldReuseWithinWindow() throws Exception {
+		final SingleFlight<String, String> flights = new SingleFlight<>(200);
+		assertThat(flights.execute("a", counting()), equalTo("result 1"));
+		assertThat(flights.execute("a", counting()), equalTo("result 1"));
+		assertThat(flights.execute("b", counting()), equalTo("result 2"));
+		assertThat(flights.getReused(), is(1L));
+		Thread.sleep(250);
+		assertThat(flights.execute("a", counting()), equalTo("result 3"));
+	}
+
+	@Test
+	public void shouldNotReuseFailures() throws Exception {
+		final SingleFlight<String, String> flights = new SingleFlight<>(10000);
+		try {
+			flights.execute("a", () -> {
+				throw FetchException.httpStatus("a", 503);
+			});
+			throw new AssertionError("no exception");
+		} catch (FetchException e) {
+			assertThat(e.status, is(503));
+		}
+		assertThat(flights.execute("a", counting()), equalTo("result 1"));
+	}
+}
@@ -0,0 +1,77 @@
+package com.adamldavis.java.lazy;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+public class VirtualThreadDownloaderTest {
+
+	HttpServer server;
+	ExecutorService handlers = Executors.newCachedThreadPool();
+	String base;
+
+	@Before
+	public void startServer() throws IOException {
+		server = LocalHttpServer.createServer(0);
+		server.setExecutor(handlers);
+		server.createContext("/hang", new HttpHandler() {
+			public void handle(HttpExchange exchange) throws IOException {
+				try {
+					Thread.sleep(20000);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				FetchEngineTest.respond(exchange, 200, "late", 4);
+			}
+		});
+		server.createContext("/fail", new HttpHandler() {
+			public void handle(HttpExchange exchange) throws IOException {
+				try {
+					Thread.sleep(200); // so the others are reading by now
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				FetchEngineTest.respond(exchange, 500, "oops", 4);
+			}
+		});
+		server.start();
+		base = "http://127.0.0.1:" + server.getAddress().getPort();
+	}
+
+	@After
+	public void stopServer() {
+		server.stop(0);
+		handlers.shutdownNow();
+	}
+
+	@Test
+	public void shouldCancelBlockedFetchesBeforeReturning() throws Exception {
+		final VirtualThreadDownloader downloader = new VirtualThreadDownloader(
+				8, 60000);
+		downloader.urls = new String[] { base + "/hang", base + "/hang",
+				base + "/fail" };
+		final long start = System.nanoTime();
+		try {
+			downloader.downloadAll();
+			fail();
+		} catch (FetchException e) {
+			assertThat(e.status, is(500));
+		}
+		assertTrue((System.nanoTime() - start) / 1000000 < 5000);
+		assertThat(downloader.getEngine().getActive(), is(0));
+		downloader.getEngine().close();
+	}
+}